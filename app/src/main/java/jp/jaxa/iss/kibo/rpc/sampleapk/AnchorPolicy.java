@@ -0,0 +1,96 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+/**
+ * 錨定 (anchor) 迴圈的收斂條件與資源上限。
+ * 位置、姿態、像素誤差任一容許值為負數時，代表不檢查該項。
+ */
+public class AnchorPolicy {
+    public static final double DISABLED = -1.0;
+
+    private final double positionTolerance; // 位置誤差容許值 (公尺)
+    private final double orientationTolerance; // 姿態誤差容許值 (弧度)
+    private final double pixelTolerance; // 影像像素誤差容許值 (像素)
+    private final int maxIterations; // 最大迭代次數
+    private final long timeBudgetMillis; // 牆鐘時間預算 (毫秒)
+
+    public AnchorPolicy(double positionTolerance, double orientationTolerance, double pixelTolerance,
+                        int maxIterations, long timeBudgetMillis) {
+        this.positionTolerance = positionTolerance;
+        this.orientationTolerance = orientationTolerance;
+        this.pixelTolerance = pixelTolerance;
+        this.maxIterations = maxIterations;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * 固定次數、不提早結束的策略，等同舊版 anchor(api, frequency) 的行為。
+     *
+     * @param iterations 迭代次數。
+     * @return 不檢查任何容許值的策略。
+     */
+    public static AnchorPolicy fixed(int iterations) {
+        return new AnchorPolicy(DISABLED, DISABLED, DISABLED, iterations, Long.MAX_VALUE);
+    }
+
+    public double getPositionTolerance() {
+        return positionTolerance;
+    }
+
+    public double getOrientationTolerance() {
+        return orientationTolerance;
+    }
+
+    public double getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * 返回收斂條件相同、但迭代次數與時間預算不超過指定值的策略，用於時間不足時降級。
+     */
+    public AnchorPolicy limit(int maxIterations, long timeBudgetMillis) {
+        return new AnchorPolicy(positionTolerance, orientationTolerance, pixelTolerance,
+                Math.min(this.maxIterations, maxIterations), Math.min(this.timeBudgetMillis, timeBudgetMillis));
+    }
+
+    /**
+     * 判斷位姿誤差是否已滿足容許值。兩項都停用時永遠不會收斂。
+     */
+    public boolean isPoseConverged(double positionError, double orientationError) {
+        if (positionTolerance < 0 && orientationTolerance < 0) return false;
+        boolean positionMet = positionTolerance < 0 || positionError <= positionTolerance;
+        boolean orientationMet = orientationTolerance < 0 || orientationError <= orientationTolerance;
+        return positionMet && orientationMet;
+    }
+
+    /**
+     * 判斷影像像素誤差是否已滿足容許值。停用時永遠不會收斂。
+     */
+    public boolean isPixelConverged(double pixelError) {
+        return pixelTolerance >= 0 && pixelError <= pixelTolerance;
+    }
+
+    /**
+     * 判斷是否已用完時間預算。
+     *
+     * @param startNanos 錨定開始時的 System.nanoTime()。
+     */
+    public boolean isOverBudget(long startNanos) {
+        if (timeBudgetMillis == Long.MAX_VALUE) return false;
+        return (System.nanoTime() - startNanos) / 1_000_000L >= timeBudgetMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "AnchorPolicy{ position <= " + positionTolerance + " m, orientation <= " + orientationTolerance
+                + " rad, pixel <= " + pixelTolerance + " px, max " + maxIterations + " iterations, budget "
+                + timeBudgetMillis + " ms }";
+    }
+}
@@ -0,0 +1,86 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 錨定 (anchor) 的結果與每次迭代的誤差紀錄。
+ */
+public class AnchorReport {
+    private final List<Sample> samples = new ArrayList<>();
+    private Frame result; // 錨定結果 (依呼叫端而定：誤差座標系或最後的指令座標系)
+    private boolean converged; // 是否因滿足容許值而提早結束
+    private long elapsedNanos; // 總耗時
+
+    public void add(Sample sample) {
+        samples.add(sample);
+    }
+
+    public void finish(Frame result, boolean converged, long elapsedNanos) {
+        this.result = result;
+        this.converged = converged;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Frame getResult() {
+        return result;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getIterations() {
+        return samples.size();
+    }
+
+    public List<Sample> getSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    /**
+     * 取得最後一次迭代的紀錄，沒有任何迭代時返回 null。
+     */
+    public Sample last() {
+        return samples.isEmpty() ? null : samples.get(samples.size() - 1);
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return String.format("AnchorReport{ iterations = %d, converged = %b, used_time = %.3f s, last = %s }",
+                getIterations(), converged, elapsedNanos / 1e9, last());
+    }
+
+    /**
+     * 單次迭代的誤差紀錄。未量測的項目為 NaN。
+     */
+    public static class Sample {
+        public final int iteration;
+        public final double positionError; // 公尺
+        public final double orientationError; // 弧度
+        public final double pixelError; // 像素
+        public final long elapsedNanos; // 從錨定開始到此迭代結束的時間
+
+        public Sample(int iteration, double positionError, double orientationError, double pixelError, long elapsedNanos) {
+            this.iteration = iteration;
+            this.positionError = positionError;
+            this.orientationError = orientationError;
+            this.pixelError = pixelError;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @SuppressLint("DefaultLocale")
+        @Override
+        public String toString() {
+            return String.format("Sample[#%d, position=%.4f m, orientation=%.4f rad, pixel=%.1f px, t=%.3f s]",
+                    iteration, positionError, orientationError, pixelError, elapsedNanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 巡航勘查：在途中的勘查點拍一張 NavCam 影像，一次找出所有可見區域的 Aruco 標記 (id = 100 + 區域編號)，
+ * 並以各自的標記分別推算 A4 紙位置。每個區域保留信心度最高的觀測；
+ * 標記夠大、夠正且整張 A4 都在畫面內的區域視為已解析，不必再專程停在區域前。
+ */
+@SuppressWarnings("try")
+public class AreaSurvey {
+    private static final String TAG = "AreaSurvey";
+    public static final int MARKER_ID_BASE = 100;
+    public static final double MARKER_LENGTH = 0.05; // 區域 Aruco 標記邊長 [m]
+
+    private final double minMarkerPixels; // 標記邊長下限 (像素)
+    private final double minSquareness; // 最短邊 / 最長邊下限，越接近 1 越正對
+    private final double minConfidence;
+    private final Map<Integer, Observation> best = new HashMap<>();
+
+    /**
+     * @param minMarkerPixels 標記平均邊長達到此值時解析度信心度為 1。
+     * @param minSquareness 標記四邊長度比下限，低於此值信心度為 0。
+     * @param minConfidence 視為已解析的信心度門檻。
+     */
+    public AreaSurvey(double minMarkerPixels, double minSquareness, double minConfidence) {
+        this.minMarkerPixels = minMarkerPixels;
+        this.minSquareness = minSquareness;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * 正對標記時，標記在影像中的邊長 (針孔模型)。
+     * @param focalPixels NavCam 焦距 (像素)，即內參矩陣的 fx。
+     * @param depth 相機到標記平面的距離 [m]。
+     */
+    public static double markerPixels(double focalPixels, double depth) {
+        return focalPixels * MARKER_LENGTH / depth;
+    }
+
+    /**
+     * 標記對應的區域編號，非區域標記時為 -1。
+     */
+    public static int areaOf(ArucoResult arucoResult) {
+        int areaId = (int) arucoResult.id - MARKER_ID_BASE;
+        return areaId >= 1 && areaId <= 4 ? areaId : -1;
+    }
+
+    /**
+     * 分析一張影像中所有區域標記，並更新各區域的最佳觀測。
+     * @param image 去畸變後的 NavCam 影像。
+     * @param pose 拍攝時的位姿。
+     * @return 本張影像中的觀測。
+     */
+    public List<Observation> observe(Image image, Frame pose) {
+        List<Observation> observations = new ArrayList<>();
+        List<ArucoResult> markers;
+        try (Profiler.Span span = Profiler.start("phase.aruco")) {
+            markers = image.aruco();
+        }
+        for (ArucoResult marker: markers) {
+            int areaId = areaOf(marker);
+            if (areaId < 0) continue;
+            Observation observation = new Observation(areaId, image, pose, marker, confidence(image, marker));
+            observations.add(observation);
+            Observation previous = best.get(areaId);
+            if (previous == null || observation.confidence > previous.confidence) {
+                best.put(areaId, observation);
+            }
+            Log.i(TAG, observation.toString());
+        }
+        return observations;
+    }
+
+    public Observation get(int areaId) {
+        return best.get(areaId);
+    }
+
+    public boolean isResolved(int areaId) {
+        Observation observation = best.get(areaId);
+        return observation != null && observation.confidence >= minConfidence;
+    }
+
+    // 信心度 = 解析度 (平均邊長 / 下限，上限 1) × 正對程度；A4 紙超出畫面時為 0
+    private double confidence(Image image, ArucoResult marker) {
+        double[] sides = new double[4];
+        double sum = 0.0, shortest = Double.MAX_VALUE, longest = 0.0;
+        for (int i = 0; i < 4; i++) {
+            double[] a = marker.corners.get(0, i);
+            double[] b = marker.corners.get(0, (i + 1) % 4);
+            sides[i] = Math.hypot(b[0] - a[0], b[1] - a[1]);
+            sum += sides[i];
+            shortest = Math.min(shortest, sides[i]);
+            longest = Math.max(longest, sides[i]);
+        }
+        if (longest == 0) return 0.0;
+        double squareness = shortest / longest;
+        if (squareness < minSquareness) return 0.0;
+
+        Point[] paper = image.paperCorners(marker);
+        if (paper == null) return 0.0;
+        int width = image.getMatImage().cols(), height = image.getMatImage().rows();
+        for (Point corner: paper) {
+            if (corner.x < 0 || corner.y < 0 || corner.x >= width || corner.y >= height) return 0.0;
+        }
+
+        double resolution = Math.min(1.0, sum / 4.0 / minMarkerPixels);
+        return resolution * squareness;
+    }
+
+    /**
+     * 單一區域的一次觀測。
+     */
+    public static final class Observation {
+        public final int areaId;
+        public final Image image;
+        public final Frame pose;
+        public final ArucoResult arucoResult;
+        public final double confidence;
+
+        Observation(int areaId, Image image, Frame pose, ArucoResult arucoResult, double confidence) {
+            this.areaId = areaId;
+            this.image = image;
+            this.pose = pose;
+            this.arucoResult = arucoResult;
+            this.confidence = confidence;
+        }
+
+        @SuppressLint("DefaultLocale")
+        @Override
+        public String toString() {
+            return String.format("Observation{ area%d, marker = %d, confidence = %.2f }", areaId, (int) arucoResult.id, confidence);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+/**
+ * 移動成本模型：估計從一個座標系移動到另一個座標系所需的時間。
+ * 任務排程器以此比較不同的拜訪順序與接近位置。
+ */
+public interface CostModel {
+    /**
+     * 估計移動成本。
+     *
+     * @param from 起點座標系。
+     * @param to 終點座標系。
+     * @return 估計的移動時間 (秒)。
+     */
+    double estimateCost(Frame from, Frame to);
+
+    /**
+     * 以固定的線速度、角速度與每段固定開銷估計時間，
+     * 段數、平移距離與旋轉角度取 PathPlanner.moveTo 實際執行的軌跡 (planner 為 null 時取直線)。
+     */
+    class Nominal implements CostModel {
+        private final PathPlanner planner;
+        private final double linearSpeed; // 公尺/秒
+        private final double angularSpeed; // 弧度/秒
+        private final double segmentOverhead; // 每段移動的固定開銷 (秒)
+
+        public Nominal(PathPlanner planner, double linearSpeed, double angularSpeed, double segmentOverhead) {
+            this.planner = planner;
+            this.linearSpeed = linearSpeed;
+            this.angularSpeed = angularSpeed;
+            this.segmentOverhead = segmentOverhead;
+        }
+
+        @Override
+        public double estimateCost(Frame from, Frame to) {
+            double length;
+            double angle;
+            int segments = 1;
+            if (planner == null) {
+                length = new Vec3(from.getPosition()).distance(to.getPosition());
+                angle = from.rotationAngle(to);
+            } else {
+                Trajectory trajectory = planner.trajectory(from, to);
+                length = trajectory.length();
+                angle = trajectory.rotationAngle();
+                segments = trajectory.legs();
+            }
+            // 保守估計：平移與旋轉的時間相加
+            return segments * segmentOverhead + length / linearSpeed + angle / angularSpeed;
+        }
+    }
+}
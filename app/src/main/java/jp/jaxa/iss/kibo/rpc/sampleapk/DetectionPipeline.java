@@ -0,0 +1,129 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 背景辨識管線：主執行緒拍照後提交，立即繼續移動；背景執行緒依序負責 Aruco、A4 校正、裁切與推論。
+ * 拍攝之間隔著阻塞的移動，佇列中幾乎只會有一張，因此逐張推論，不合併批次。
+ * 偵測器只在此執行緒上使用；主執行緒要自己推論前，須先等所有 Future 完成，或呼叫 stop() 等此執行緒結束。
+ */
+@SuppressWarnings("try")
+public class DetectionPipeline {
+    private static final String TAG = "DetectionPipeline";
+
+    private final ObjectDetector detector;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean running;
+    private Thread thread;
+
+    public DetectionPipeline(ObjectDetector detector) {
+        this.detector = detector;
+    }
+
+    public synchronized DetectionPipeline start() {
+        if (running) return this;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * 停止管線，並等待執行緒結束 (進行中的推論會先完成)；之後呼叫端可以安全地使用偵測器。
+     * 佇列中尚未處理的工作不會完成。
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) return;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * 提交一張區域影像。
+     * @param areaId 區域編號。
+     * @param location 拍攝時的位姿，之後前往目標時使用。
+     * @param image 去畸變後的 NavCam 影像。
+     * @return 完成時的 AreaInfo；校正或推論失敗時物品為空。
+     */
+    public Future<AreaInfo> submit(int areaId, Frame location, Image image) {
+        Job job = new Job(areaId, location, image);
+        queue.add(job);
+        return job.future;
+    }
+
+    private void loop() {
+        while (running) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                job.future.complete(process(job));
+            } catch (Throwable t) {
+                // 包含 OpenCV、ONNX 拋出的 Error：交給 Future，等待端以 ExecutionException 處理
+                Log.e(TAG, "area" + job.areaId + ": " + t, t);
+                job.future.completeExceptionally(t);
+            }
+        }
+    }
+
+    private AreaInfo process(Job job) {
+        String area = "area" + job.areaId;
+        try (Profiler.Span span = Profiler.start("phase.rectify")) {
+            job.arucoResult = job.image.aruco(area);
+            job.paper = job.image.correctA4Paper(job.arucoResult);
+            job.region = job.paper == null ? null : job.paper.cropRegion();
+        } catch (RuntimeException e) {
+            Log.e(TAG, area + ": rectification failed: " + e.getMessage(), e);
+        }
+
+        List<ItemInfo> items = null;
+        if (job.region != null) {
+            try (Profiler.Span span = Profiler.start("phase.infer")) {
+                items = detector.detect(job.region.getMatImage(), "lost");
+            } catch (RuntimeException e) {
+                Log.e(TAG, area + ": detection failed: " + e.getMessage(), e);
+            }
+        }
+        Log.i(TAG, area + ": " + (items == null ? "no result" : items.size() + " items"));
+        return new AreaInfo(job.areaId, job.location, job.region, job.paper, job.arucoResult, items);
+    }
+
+    private static class Job {
+        final int areaId;
+        final Frame location;
+        final Image image;
+        final CompletableFuture<AreaInfo> future = new CompletableFuture<>();
+        ArucoResult arucoResult;
+        Image paper;
+        Image region;
+
+        Job(int areaId, Frame location, Image image) {
+            this.areaId = areaId;
+            this.location = location;
+            this.image = image;
+        }
+    }
+}
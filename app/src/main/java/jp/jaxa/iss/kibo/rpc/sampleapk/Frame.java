@@ -4,7 +4,6 @@ import android.util.Log;
 
 import gov.nasa.arc.astrobee.Kinematics;
 import gov.nasa.arc.astrobee.Result;
-import jp.jaxa.iss.kibo.rpc.api.KiboRpcApi;
 
 public class Frame {
     private Vector position;
@@ -23,10 +22,14 @@ public class Frame {
         this(new Vector(kinematics.getPosition()), new Quater(kinematics.getOrientation()));
     }
 
-    public Frame(KiboRpcApi api) {
+    public Frame(ProfiledApi api) {
         this(api.getRobotKinematics());
     }
 
+    public Frame(Pose pose) {
+        this(pose.getTranslation().toVector(), pose.getRotation().toQuater());
+    }
+
     public Vector getPosition() {
         return this.position;
     }
@@ -53,7 +56,7 @@ public class Frame {
         return this.absolute(new Frame(target));
     }
 
-    public Frame absolute(KiboRpcApi api) {
+    public Frame absolute(ProfiledApi api) {
         return this.absolute(api.getRobotKinematics());
     }
 
@@ -68,50 +71,121 @@ public class Frame {
         return this.relative(new Frame(origin));
     }
 
-    public Frame relative(KiboRpcApi api) {
+    public Frame relative(ProfiledApi api) {
         return this.relative(api.getRobotKinematics());
     }
 
-    public Result moveTo(KiboRpcApi api, boolean printRobotPosition) {
+    // absolute / relative 對位置與姿態分開運算，適用於軸向偏移；
+    // 以下為剛體變換 (SE(3)) 的合成，平移會經過旋轉
+
+    public Pose toPose() {
+        return new Pose(this);
+    }
+
+    /**
+     * 剛體合成 this * local：local 為此座標系中的位姿，返回其世界座標。
+     */
+    public Frame compose(Frame local) {
+        return new Frame(toPose().compose(local.toPose()));
+    }
+
+    public Frame inverse() {
+        return new Frame(toPose().inverse());
+    }
+
+    /**
+     * this^-1 * target：target 在此座標系中的相對位姿。
+     */
+    public Frame between(Frame target) {
+        Pose pose = toPose();
+        return new Frame(pose.setBetween(pose, target.toPose()));
+    }
+
+    /**
+     * 從此姿態轉到 target 姿態的最短弧角度 (弧度)，範圍為 [0, π]。
+     */
+    public double rotationAngle(Frame target) {
+        Quat error = new Quat(target.getOrientation()).normalize();
+        return error.setMulConjugate(error, new Quat(orientation).normalize()).angle();
+    }
+
+    /**
+     * 姿態規劃：返回姿態與 reference 同半球 (最短弧) 的座標系，位置不變。
+     * 手寫的四元數如 (0, 0, -0.707, 0.707) 也會在此被正規化。
+     */
+    public Frame shortestArc(Frame reference) {
+        return new Frame(position, orientation.shortestArc(reference.getOrientation()));
+    }
+
+    public Result moveTo(ProfiledApi api, boolean printRobotPosition) {
         return api.moveTo(position, orientation, printRobotPosition);
     }
 
-    public Result relativeMoveTo(KiboRpcApi api, boolean printRobotPosition) {
+    public Result relativeMoveTo(ProfiledApi api, boolean printRobotPosition) {
         // relative position, absolute orientation
         return api.relativeMoveTo(position, orientation, printRobotPosition);
     }
 
-    public Frame anchor(KiboRpcApi api, int frequency) {
-        Log.i("anchor", "start: " + new Frame(api));
+    public Frame anchor(ProfiledApi api, int frequency) {
+        return anchor(api, AnchorPolicy.fixed(frequency)).getResult();
+    }
+
+    /**
+     * 反覆移動到此座標系，直到位置與姿態誤差滿足容許值、達到最大次數或用完時間預算。
+     * @param api API 計時代理。
+     * @param policy 收斂條件與資源上限。
+     * @return 錨定報告，getResult() 為目標相對於平均機器人座標系的誤差。
+     */
+    public AnchorReport anchor(ProfiledApi api, AnchorPolicy policy) {
+        Log.i("anchor", "start: " + new Frame(api) + ", policy: " + policy);
 
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+        AnchorReport report = new AnchorReport();
+        boolean converged = false;
 
-        Frame robotFrame = new Frame();
-        for (int i = 0; i < frequency; i++) {
+        Pose.Mean robotMean = new Pose.Mean();
+        int count = 0;
+        while (count < policy.getMaxIterations()) {
             moveTo(api, true);
-            robotFrame = robotFrame.absolute(api);
 
+            // 每次迭代只讀取一次運動學資料
             Kinematics kinematics = api.getRobotKinematics();
+            Frame current = new Frame(kinematics);
+            robotMean.add(current);
+            count++;
+
+            double positionError = position.relative(current.getPosition()).norm();
+            double orientationError = orientation.relative(current.getOrientation()).angle();
+            report.add(new AnchorReport.Sample(count, positionError, orientationError, Double.NaN, System.nanoTime() - startTime));
+
             Vector v, a, w;
             v = new Vector(kinematics.getLinearVelocity());
             a = new Vector(kinematics.getLinearAcceleration());
             w = new Vector(kinematics.getAngularVelocity());
             Log.i("anchor", "v: " + v + ", a: " + a + ", w: " + w);
-            Log.i("anchor", "anchoring: " + new Frame(api));
+            Log.i("anchor", "anchoring: " + current + ", " + report.last());
+
+            if (policy.isPoseConverged(positionError, orientationError)) {
+                converged = true;
+                break;
+            }
+            if (policy.isOverBudget(startTime)) {
+                Log.w("anchor", "time budget exhausted after " + count + " iterations.");
+                break;
+            }
         }
-        robotFrame = robotFrame.gain(1.0 / frequency);
-
-        long endTime = System.currentTimeMillis();
-        Log.i("anchor", "used_time: " + (endTime - startTime) / 1000 + " seconds.");
+        // 平移取平均，姿態做半球對齊的四元數平均；沒有樣本時為單位位姿
+        Frame robotFrame = new Frame(robotMean.get(new Pose()));
 
         Log.i("anchor", "anchor_target: " + this);
         Log.i("anchor", "anchored_robot: " + robotFrame);
 
         Frame errorFrame = relative(robotFrame);
+        report.finish(errorFrame, converged, System.nanoTime() - startTime);
         Log.i("anchor", "anchored_error: " + errorFrame);
-        Log.i("anchor", "robot_current: " + new Frame(api));
+        Log.i("anchor", "report: " + report);
 
-        return errorFrame;
+        return report;
     }
 
     @Override
@@ -17,18 +17,20 @@ import org.opencv.imgproc.Imgproc;
 import java.util.ArrayList;
 import java.util.List;
 
-import jp.jaxa.iss.kibo.rpc.api.KiboRpcApi;
-
+@SuppressWarnings("try")
 public class Image extends Mat {
     private Mat image;
-    private KiboRpcApi api;
+    private ProfiledApi api;
+
+    // 除錯存檔開關，任務時間不足時關閉以節省 saveMatImage 的時間
+    private static volatile boolean saveEnabled = true;
 
-    public Image(Mat image, KiboRpcApi api) {
+    public Image(Mat image, ProfiledApi api) {
         this.image = image;
         this.api = api;
     }
 
-    public Image(KiboRpcApi api) {
+    public Image(ProfiledApi api) {
         this(api.getMatNavCam(), api);
     }
 
@@ -36,20 +38,35 @@ public class Image extends Mat {
         return this.image;
     }
 
-    public static Image undistort(KiboRpcApi api) {
-        Mat image = api.getMatNavCam();
+    public static Image undistort(ProfiledApi api) {
+        return undistort(api, api.getMatNavCam());
+    }
 
-        Mat cameraMatrix = new Mat(3,3, CvType.CV_64F);
-        cameraMatrix.put(0, 0, api.getNavCamIntrinsics()[0]);
+    /**
+     * 拍攝一張通過品質閘門的影像並去畸變。
+     * @param api API 計時代理。
+     * @param gate 影像品質閘門。
+     * @return 去畸變後的影像。
+     */
+    public static Image capture(ProfiledApi api, QualityGate gate) {
+        return undistort(api, gate.capture(api));
+    }
 
-        Mat cameraCoefficients = new Mat(1, 5, CvType.CV_64F);
-        cameraCoefficients.put(0, 0, api.getNavCamIntrinsics()[1]);
-        cameraCoefficients.convertTo(cameraCoefficients, CvType.CV_64F);
+    public static Image undistort(ProfiledApi api, Mat image) {
+        try (Profiler.Span span = Profiler.start("phase.undistort")) {
+            double[][] intrinsics = api.getNavCamIntrinsics();
+            Mat cameraMatrix = new Mat(3,3, CvType.CV_64F);
+            cameraMatrix.put(0, 0, intrinsics[0]);
 
-        Mat undistortImg = new Mat();
-        Calib3d.undistort(image, undistortImg, cameraMatrix, cameraCoefficients);
+            Mat cameraCoefficients = new Mat(1, 5, CvType.CV_64F);
+            cameraCoefficients.put(0, 0, intrinsics[1]);
+            cameraCoefficients.convertTo(cameraCoefficients, CvType.CV_64F);
 
-        return new Image(undistortImg, api);
+            Mat undistortImg = new Mat();
+            Calib3d.undistort(image, undistortImg, cameraMatrix, cameraCoefficients);
+
+            return new Image(undistortImg, api);
+        }
     }
 
     public List<ArucoResult> aruco() {
@@ -98,14 +115,29 @@ public class Image extends Mat {
     }
 
     public Image crop(String area) {
+        return crop(aruco(area));
+    }
+
+    /**
+     * 以指定的 Aruco 標記校正 A4 紙後裁切物品區域，同一張影像中有多個標記時可分別呼叫。
+     */
+    public Image crop(ArucoResult arucoResult) {
         // 首先，獲取經 A4 紙透視校正後的影像
-        Image correctedA4Image = correctA4Paper(area);
+        Image correctedA4Image = correctA4Paper(arucoResult);
 
         if (correctedA4Image == null) {
             Log.e("Image_crop", "無法獲取校正後的 A4 影像，無法執行裁剪。");
             return null;
         }
 
+        return correctedA4Image.cropRegion();
+    }
+
+    /**
+     * 從已校正的 A4 影像裁切左上角 224 x 224 的物品區域。
+     */
+    public Image cropRegion() {
+        Image correctedA4Image = this;
         Mat correctedMat = correctedA4Image.image; // 獲取校正後的底層 Mat
 
         // 定義裁剪區域：從左上角 (0,0) 開始，寬度 224px，高度 224px
@@ -137,7 +169,12 @@ public class Image extends Mat {
         return new Image(croppedMat, api);
     }
 
+    public static void setSaveEnabled(boolean enabled) {
+        saveEnabled = enabled;
+    }
+
     public void save(String imageName) {
+        if (!saveEnabled) return;
         api.saveMatImage(image, imageName);
     }
 
@@ -145,16 +182,34 @@ public class Image extends Mat {
      * 根據Aruco標記進行位置修正，不調整姿態。
      * 目標：將Aruco的左下角對齊圖像中心。
      * 位置修正的位移將被限制在垂直於 Astrobee 當前姿態所定義的法向量的平面上。
-     * @param api KiboRpcApi 實例。
+     * @param api API 計時代理。
      * @param axisFrame 圖像的法向量。
      * @param area "area1", "area2", "area3", "area4" 其中一個
      * @param frequency 次數
      * @return Result 物件，表示移動操作的成功或失敗。
      */
-    public static Frame anchor(KiboRpcApi api, Frame axisFrame, String area, int frequency) {
+    public static Frame anchor(ProfiledApi api, Frame axisFrame, String area, int frequency) {
+        return anchor(api, axisFrame, area, AnchorPolicy.fixed(frequency)).getResult();
+    }
+
+    /**
+     * 與 anchor(api, axisFrame, area, frequency) 相同，但在像素誤差滿足容許值、
+     * 達到最大次數或用完時間預算時提早結束。
+     * @param api API 計時代理。
+     * @param axisFrame 圖像的法向量。
+     * @param area "area1", "area2", "area3", "area4" 其中一個
+     * @param policy 收斂條件與資源上限，使用其中的像素誤差容許值。
+     * @return 錨定報告，getResult() 為最後的指令座標系；未檢測到 Aruco 標記時為 null。
+     */
+    public static AnchorReport anchor(ProfiledApi api, Frame axisFrame, String area, AnchorPolicy policy) {
+        final double PIXELS_PER_METER = 567.0; // 您提供的像素轉公尺比例
+
+        long startTime = System.nanoTime();
+        AnchorReport report = new AnchorReport();
         Frame anchorFrame = null;
+        boolean converged = false;
 
-        for (int i = 0; i < frequency; i++) {
+        for (int i = 0; i < policy.getMaxIterations(); i++) {
             Frame currentFrame = new Frame(api);
 
             // 1. 獲取當前圖像 (建議先去畸變)
@@ -165,56 +220,72 @@ public class Image extends Mat {
 
             if (arucoResult == null) {
                 Log.w("Image_Anchor", "未檢測到 Aruco 標記。不進行位置修正。");
-                return null;
-            } else {
-                // 假設第一個檢測到的 Aruco 標記是用於錨定的
-                Mat arucoCornerPointsMat = arucoResult.corners;
+                anchorFrame = null;
+                break;
+            }
 
-                // Aruco 標記的像素座標角點 (通常是左上[0], 右上[1], 右下[2], 左下[3])
-                Point arucoBottomLeftPx = new Point(arucoCornerPointsMat.get(0, 3)[0], arucoCornerPointsMat.get(0, 3)[1]);
-                Log.i("Image_Anchor", "檢測到的 Aruco 左下角像素點: (" + arucoBottomLeftPx.x + ", " + arucoBottomLeftPx.y + ")");
-
-                // 3. 計算圖片中心點
-                double imageCenterX = currentImage.image.cols() / 2.0;
-                double imageCenterY = currentImage.image.rows() / 2.0;
-                Log.i("Image_Anchor", "圖像中心像素點: (" + imageCenterX + ", " + imageCenterY + ")");
-
-                // 4. 計算 Aruco 左下角與圖片中心點之間的像素偏差 (delta_x_px, delta_y_px)
-                // 這裡的偏差是從圖像中心指向 Aruco 左下角的向量
-                double deltaX_px = arucoBottomLeftPx.x - imageCenterX; // 圖像 X 軸偏差 (向右為正)
-                double deltaY_px = arucoBottomLeftPx.y - imageCenterY; // 圖像 Y 軸偏差 (向下為正)
-                Log.i("Image_Anchor", "像素偏差 (Aruco左下角 - 圖像中心): dx=" + deltaX_px + ", dy=" + deltaY_px);
-
-                // 5. 將像素偏差轉換為公尺
-                final double PIXELS_PER_METER = 567.0; // 您提供的像素轉公尺比例
-                double deltaX_m = deltaX_px / PIXELS_PER_METER;
-                double deltaY_m = deltaY_px / PIXELS_PER_METER;
-                Log.i("Image_Anchor", "公尺偏差: dx_m=" + deltaX_m + " m, dy_m=" + deltaY_m + " m");
-
-                // 6. Astrobee 世界座標系中的移動向量
-                Vector delta = new Vector(0.0, 0.0, 0.0);
-                Vector axis = axisFrame.getPosition();
-                if (axis.getX() > 0.5 && axis.getY() < 0.5 && axis.getZ() < 0.5) {
-                    // YZ 平面
-                    delta = new Vector(0.0, -deltaX_m, deltaY_m);
-                } else if (axis.getX() < 0.5 && axis.getY() > 0.5 && axis.getZ() < 0.5) {
-                    // ZX 平面
-                    delta = new Vector(deltaX_m, 0.0, deltaY_m);
-                } else if (axis.getX() < 0.5 && axis.getY() < 0.5 && axis.getZ() > 0.5) {
-                    // XY 平面
-                    delta = new Vector(deltaY_m, deltaX_m, 0.0);
-                }
+            // 假設第一個檢測到的 Aruco 標記是用於錨定的
+            Mat arucoCornerPointsMat = arucoResult.corners;
+
+            // Aruco 標記的像素座標角點 (通常是左上[0], 右上[1], 右下[2], 左下[3])
+            Point arucoBottomLeftPx = new Point(arucoCornerPointsMat.get(0, 3)[0], arucoCornerPointsMat.get(0, 3)[1]);
+            Log.i("Image_Anchor", "檢測到的 Aruco 左下角像素點: (" + arucoBottomLeftPx.x + ", " + arucoBottomLeftPx.y + ")");
+
+            // 3. 計算圖片中心點
+            double imageCenterX = currentImage.image.cols() / 2.0;
+            double imageCenterY = currentImage.image.rows() / 2.0;
+
+            // 4. 計算 Aruco 左下角與圖片中心點之間的像素偏差 (delta_x_px, delta_y_px)
+            // 這裡的偏差是從圖像中心指向 Aruco 左下角的向量
+            double deltaX_px = arucoBottomLeftPx.x - imageCenterX; // 圖像 X 軸偏差 (向右為正)
+            double deltaY_px = arucoBottomLeftPx.y - imageCenterY; // 圖像 Y 軸偏差 (向下為正)
+            double pixelError = Math.hypot(deltaX_px, deltaY_px);
+            Log.i("Image_Anchor", "像素偏差 (Aruco左下角 - 圖像中心): dx=" + deltaX_px + ", dy=" + deltaY_px);
+
+            // 5. 將像素偏差轉換為公尺
+            double deltaX_m = deltaX_px / PIXELS_PER_METER;
+            double deltaY_m = deltaY_px / PIXELS_PER_METER;
+            Log.i("Image_Anchor", "公尺偏差: dx_m=" + deltaX_m + " m, dy_m=" + deltaY_m + " m");
+
+            report.add(new AnchorReport.Sample(i + 1, Math.hypot(deltaX_m, deltaY_m), Double.NaN, pixelError, System.nanoTime() - startTime));
 
-                anchorFrame = new Frame(
-                        currentFrame.getPosition().absolute(delta),
-                        currentFrame.getOrientation()
-                );
-                Log.i("Image_Anchor", "Astrobee 的移動向量: " + anchorFrame);
-                anchorFrame.moveTo(api, true);
+            // 已對齊則不再移動
+            if (policy.isPixelConverged(pixelError)) {
+                if (anchorFrame == null) anchorFrame = currentFrame;
+                converged = true;
+                break;
+            }
+
+            // 6. Astrobee 世界座標系中的移動向量
+            Vector delta = new Vector(0.0, 0.0, 0.0);
+            Vector axis = axisFrame.getPosition();
+            if (axis.getX() > 0.5 && axis.getY() < 0.5 && axis.getZ() < 0.5) {
+                // YZ 平面
+                delta = new Vector(0.0, -deltaX_m, deltaY_m);
+            } else if (axis.getX() < 0.5 && axis.getY() > 0.5 && axis.getZ() < 0.5) {
+                // ZX 平面
+                delta = new Vector(deltaX_m, 0.0, deltaY_m);
+            } else if (axis.getX() < 0.5 && axis.getY() < 0.5 && axis.getZ() > 0.5) {
+                // XY 平面
+                delta = new Vector(deltaY_m, deltaX_m, 0.0);
+            }
+
+            anchorFrame = new Frame(
+                    currentFrame.getPosition().absolute(delta),
+                    currentFrame.getOrientation()
+            );
+            Log.i("Image_Anchor", "Astrobee 的移動向量: " + anchorFrame);
+            anchorFrame.moveTo(api, true);
+
+            if (policy.isOverBudget(startTime)) {
+                Log.w("Image_Anchor", "時間預算已用完，共迭代 " + (i + 1) + " 次。");
+                break;
             }
         }
 
-        return anchorFrame;
+        report.finish(anchorFrame, converged, System.nanoTime() - startTime);
+        Log.i("Image_Anchor", "report: " + report);
+        return report;
     }
 
     public Image correctA4Paper(String area) {
@@ -229,6 +300,85 @@ public class Image extends Mat {
             return null;
         }
 
+        Point[] finalSourcePointsArray = paperCorners(arucoResult);
+        if (finalSourcePointsArray == null) {
+            return null;
+        }
+
+        // A4 紙的實際物理尺寸 - 假設為橫向 (重要！)
+        double a4WidthCm = 29.7;          // 橫向 A4 的寬度
+        double a4HeightCm = 21.0;         // 橫向 A4 的高度
+
+        MatOfPoint2f sourcePoints = new MatOfPoint2f(
+                finalSourcePointsArray[0], // A4 的左上角
+                finalSourcePointsArray[1], // A4 的右上角
+                finalSourcePointsArray[2], // A4 的右下角
+                finalSourcePointsArray[3]  // A4 的左下角
+        );
+
+        // --- 除錯視覺化：在圖像上繪製計算出的 A4 角點 ---
+        Mat debugImage = image.clone();
+
+        // 定義顏色 (BGR 格式, 0-255)
+        Scalar blue = new Scalar(255, 0, 0);
+        Scalar green = new Scalar(0, 255, 0);
+        Scalar red = new Scalar(0, 0, 255);
+        Scalar cyan = new Scalar(255, 255, 0);
+
+        int radius = 10; // 圓圈半徑
+        int thickness = 3; // 線條和圓圈的粗細
+
+        // 在計算出的 A4 角點處繪製圓圈
+        Imgproc.circle(debugImage, finalSourcePointsArray[0], radius, blue, thickness);
+        Imgproc.circle(debugImage, finalSourcePointsArray[1], radius, green, thickness);
+        Imgproc.circle(debugImage, finalSourcePointsArray[2], radius, red, thickness);
+        Imgproc.circle(debugImage, finalSourcePointsArray[3], radius, cyan, thickness);
+
+        // 繪製連接 A4 角點的線條 (應該形成一個四邊形)
+        Imgproc.line(debugImage, finalSourcePointsArray[0], finalSourcePointsArray[1], blue, thickness);
+        Imgproc.line(debugImage, finalSourcePointsArray[1], finalSourcePointsArray[2], green, thickness);
+        Imgproc.line(debugImage, finalSourcePointsArray[2], finalSourcePointsArray[3], red, thickness);
+        Imgproc.line(debugImage, finalSourcePointsArray[3], finalSourcePointsArray[0], cyan, thickness);
+
+        // 保存除錯圖像，查看計算出的角點落在何處
+        new Image(debugImage, api).save("debug_a4_corners.png");
+        Log.i("image_correct", "已保存帶有計算出的 A4 角點的除錯圖像: debug_a4_corners.png");
+
+        // --- 最終的透視變換 ---
+
+        // 目標尺寸的定義變更：將短邊固定為 224px
+        final int SHORT_SIDE_PX = 224;
+
+        // A4 紙是橫向的：寬度 29.7cm (長邊), 高度 21.0cm (短邊)
+        // 因此，目標圖像的高度 (短邊) 應為 SHORT_SIDE_PX
+        int targetHeightPx = SHORT_SIDE_PX;
+
+        // 根據短邊和 A4 紙的長寬比計算長邊 (寬度)
+        double aspectRatio = a4WidthCm / a4HeightCm; // 29.7 / 21.0
+        int targetWidthPx = (int) Math.round(targetHeightPx * aspectRatio);
+
+
+        MatOfPoint2f destinationPoints = new MatOfPoint2f(
+                new Point(0, 0),
+                new Point(targetWidthPx - 1, 0),
+                new Point(targetWidthPx - 1, targetHeightPx - 1),
+                new Point(0, targetHeightPx - 1)
+        );
+
+        Mat perspectiveTransform = Imgproc.getPerspectiveTransform(sourcePoints, destinationPoints);
+
+        Mat correctedMat = new Mat();
+        Imgproc.warpPerspective(image, correctedMat, perspectiveTransform, new Size(targetWidthPx, targetHeightPx));
+
+        // 返回校正後的影像，不在此處進行裁剪
+        return new Image(correctedMat, api);
+    }
+
+    /**
+     * 由 Aruco 標記推算 A4 紙四個角點在影像中的像素位置 (左上、右上、右下、左下)。
+     * @return 無法計算時為 null。
+     */
+    public Point[] paperCorners(ArucoResult arucoResult) {
         Mat arucoCornerPointsMat = arucoResult.corners; // 假設第一個檢測到的標記是我們需要的
 
         // Aruco 標記的像素座標角點 (通常是左上, 右上, 右下, 左下)
@@ -322,70 +472,6 @@ public class Image extends Mat {
 
         // 現在 a4CornersInImagePixels 包含了 A4 紙的四個角點在圖像中的像素位置，
         // 並且它們的順序應該是「左上、右上、右下、左下」，這正是 warpPerspective 所期望的源點順序。
-        Point[] finalSourcePointsArray = a4CornersInImagePixels.toArray();
-
-        MatOfPoint2f sourcePoints = new MatOfPoint2f(
-                finalSourcePointsArray[0], // A4 的左上角
-                finalSourcePointsArray[1], // A4 的右上角
-                finalSourcePointsArray[2], // A4 的右下角
-                finalSourcePointsArray[3]  // A4 的左下角
-        );
-
-        // --- 除錯視覺化：在圖像上繪製計算出的 A4 角點 ---
-        Mat debugImage = image.clone();
-
-        // 定義顏色 (BGR 格式, 0-255)
-        Scalar blue = new Scalar(255, 0, 0);
-        Scalar green = new Scalar(0, 255, 0);
-        Scalar red = new Scalar(0, 0, 255);
-        Scalar cyan = new Scalar(255, 255, 0);
-
-        int radius = 10; // 圓圈半徑
-        int thickness = 3; // 線條和圓圈的粗細
-
-        // 在計算出的 A4 角點處繪製圓圈
-        Imgproc.circle(debugImage, finalSourcePointsArray[0], radius, blue, thickness);
-        Imgproc.circle(debugImage, finalSourcePointsArray[1], radius, green, thickness);
-        Imgproc.circle(debugImage, finalSourcePointsArray[2], radius, red, thickness);
-        Imgproc.circle(debugImage, finalSourcePointsArray[3], radius, cyan, thickness);
-
-        // 繪製連接 A4 角點的線條 (應該形成一個四邊形)
-        Imgproc.line(debugImage, finalSourcePointsArray[0], finalSourcePointsArray[1], blue, thickness);
-        Imgproc.line(debugImage, finalSourcePointsArray[1], finalSourcePointsArray[2], green, thickness);
-        Imgproc.line(debugImage, finalSourcePointsArray[2], finalSourcePointsArray[3], red, thickness);
-        Imgproc.line(debugImage, finalSourcePointsArray[3], finalSourcePointsArray[0], cyan, thickness);
-
-        // 保存除錯圖像，查看計算出的角點落在何處
-        api.saveMatImage(debugImage, "debug_a4_corners.png");
-        Log.i("image_correct", "已保存帶有計算出的 A4 角點的除錯圖像: debug_a4_corners.png");
-
-        // --- 最終的透視變換 ---
-
-        // 目標尺寸的定義變更：將短邊固定為 224px
-        final int SHORT_SIDE_PX = 224;
-
-        // A4 紙是橫向的：寬度 29.7cm (長邊), 高度 21.0cm (短邊)
-        // 因此，目標圖像的高度 (短邊) 應為 SHORT_SIDE_PX
-        int targetHeightPx = SHORT_SIDE_PX;
-
-        // 根據短邊和 A4 紙的長寬比計算長邊 (寬度)
-        double aspectRatio = a4WidthCm / a4HeightCm; // 29.7 / 21.0
-        int targetWidthPx = (int) Math.round(targetHeightPx * aspectRatio);
-
-
-        MatOfPoint2f destinationPoints = new MatOfPoint2f(
-                new Point(0, 0),
-                new Point(targetWidthPx - 1, 0),
-                new Point(targetWidthPx - 1, targetHeightPx - 1),
-                new Point(0, targetHeightPx - 1)
-        );
-
-        Mat perspectiveTransform = Imgproc.getPerspectiveTransform(sourcePoints, destinationPoints);
-
-        Mat correctedMat = new Mat();
-        Imgproc.warpPerspective(image, correctedMat, perspectiveTransform, new Size(targetWidthPx, targetHeightPx));
-
-        // 返回校正後的影像，不在此處進行裁剪
-        return new Image(correctedMat, api);
+        return a4CornersInImagePixels.toArray();
     }
 }
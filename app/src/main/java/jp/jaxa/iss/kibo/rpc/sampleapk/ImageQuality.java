@@ -0,0 +1,122 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Collections;
+
+/**
+ * 影像品質指標：清晰度 (Laplacian 變異數) 與曝光 (亮度直方圖)。
+ * 所有指標都在縮小後的灰階影像上計算，單張成本約 1~2 ms。
+ */
+public class ImageQuality {
+    public static final int ANALYSIS_WIDTH = 160; // 分析用的縮圖寬度 (像素)
+    private static final int DARK_LEVEL = 16; // 低於此亮度視為欠曝
+    private static final int BRIGHT_LEVEL = 240; // 高於此亮度視為過曝
+
+    private final double sharpness; // Laplacian 變異數，越大越清晰
+    private final double meanBrightness; // 平均亮度 (0~255)
+    private final double darkFraction; // 欠曝像素比例
+    private final double brightFraction; // 過曝像素比例
+    private final long elapsedNanos; // 計算耗時
+
+    private ImageQuality(double sharpness, double meanBrightness, double darkFraction, double brightFraction, long elapsedNanos) {
+        this.sharpness = sharpness;
+        this.meanBrightness = meanBrightness;
+        this.darkFraction = darkFraction;
+        this.brightFraction = brightFraction;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * 計算影像的品質指標，不修改輸入影像。
+     *
+     * @param image 原始影像 (灰階或彩色)。
+     * @return 品質指標。
+     */
+    public static ImageQuality measure(Mat image) {
+        long start = System.nanoTime();
+
+        // 1. 縮圖並轉為灰階
+        Mat small = new Mat();
+        double scale = (double) ANALYSIS_WIDTH / image.cols();
+        if (scale < 1.0) {
+            Imgproc.resize(image, small, new Size(ANALYSIS_WIDTH, Math.round(image.rows() * scale)), 0, 0, Imgproc.INTER_AREA);
+        } else {
+            image.copyTo(small);
+        }
+        if (small.channels() == 3) {
+            Imgproc.cvtColor(small, small, Imgproc.COLOR_BGR2GRAY);
+        } else if (small.channels() == 4) {
+            Imgproc.cvtColor(small, small, Imgproc.COLOR_BGRA2GRAY);
+        }
+
+        // 2. 清晰度：Laplacian 響應的變異數
+        Mat laplacian = new Mat();
+        Imgproc.Laplacian(small, laplacian, CvType.CV_64F);
+        MatOfDouble mean = new MatOfDouble();
+        MatOfDouble stddev = new MatOfDouble();
+        Core.meanStdDev(laplacian, mean, stddev);
+        double sigma = stddev.get(0, 0)[0];
+
+        // 3. 曝光：亮度直方圖，一次批次讀出
+        Mat hist = new Mat();
+        Imgproc.calcHist(Collections.singletonList(small), new MatOfInt(0), new Mat(), hist, new MatOfInt(256), new MatOfFloat(0f, 256f));
+        float[] bins = new float[256];
+        hist.get(0, 0, bins);
+
+        double total = 0, weighted = 0, dark = 0, bright = 0;
+        for (int i = 0; i < bins.length; i++) {
+            total += bins[i];
+            weighted += i * bins[i];
+            if (i < DARK_LEVEL) dark += bins[i];
+            if (i >= BRIGHT_LEVEL) bright += bins[i];
+        }
+
+        small.release();
+        laplacian.release();
+        mean.release();
+        stddev.release();
+        hist.release();
+
+        if (total == 0) {
+            return new ImageQuality(0, 0, 1, 0, System.nanoTime() - start);
+        }
+        return new ImageQuality(sigma * sigma, weighted / total, dark / total, bright / total, System.nanoTime() - start);
+    }
+
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    public double getMeanBrightness() {
+        return meanBrightness;
+    }
+
+    public double getDarkFraction() {
+        return darkFraction;
+    }
+
+    public double getBrightFraction() {
+        return brightFraction;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return String.format("ImageQuality[sharpness=%.1f, mean=%.1f, dark=%.3f, bright=%.3f, t=%.2f ms]",
+                sharpness, meanBrightness, darkFraction, brightFraction, elapsedNanos / 1e6);
+    }
+}
@@ -17,11 +17,6 @@ import org.opencv.aruco.Dictionary;
 import org.opencv.aruco.Aruco;
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.CvType;
-import java.io.InputStream;
-import java.io.IOException;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import org.opencv.android.Utils;
 import org.opencv.core.MatOfDMatch;
 import org.opencv.core.MatOfKeyPoint;
 import org.opencv.core.MatOfPoint;
@@ -102,29 +97,11 @@ public class ImgService extends KiboRpcService {
         String[] foundItems = new String[AREA_POINTS.length];
         int[] itemCounts = new int[AREA_POINTS.length];
 
-        // Load template images
+        // Load template images from the shared template bank (decoded once, memory-mapped afterwards)
+        TemplateBank bank = TemplateBank.get(this);
         Mat[] templates = new Mat[TEMPLATE_FILE_NAMES.length];
         for (int i = 0; i < TEMPLATE_FILE_NAMES.length; i++) {
-            try{
-                // Open the template image file in Bitmap from the file name and convert to Mat
-                InputStream inputStream = getAssets().open(TEMPLATE_FILE_NAMES[i]);
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                Mat mat = new Mat();
-                Utils.bitmapToMat(bitmap, mat);
-
-                // Convert the Bitmap to grayscale
-                Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
-
-                // Assign to an array of templates
-                templates[i] = mat;
-
-                // Release the InputStream
-                inputStream.close();
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error loading template image: " + TEMPLATE_FILE_NAMES[i], e);
-                e.printStackTrace();
-            }
+            templates[i] = bank.getGray(i);
         }
 
         // Visit each area
@@ -174,20 +151,15 @@ public class ImgService extends KiboRpcService {
 
 
                 // ------------- BEGIN: 用 ORB+BFMatcher 進行多目標偵測 -------------
-                ORB orb = ORB.create(500);
+                ORB orb = ORB.create(TemplateBank.ORB_FEATURES);
                 BFMatcher matcher = BFMatcher.create(BFMatcher.BRUTEFORCE_HAMMING, false);
 
+                // Template keypoints and descriptors are precomputed in the template bank
                 List<MatOfKeyPoint> tplKeyPoints = new ArrayList<>();
                 List<Mat> tplDescriptors = new ArrayList<>();
                 for (int t = 0; t < templates.length; t++) {
-                    Mat grayTpl = new Mat();
-                    Imgproc.cvtColor(templates[t], grayTpl, Imgproc.COLOR_BGR2GRAY);
-                    MatOfKeyPoint kp = new MatOfKeyPoint();
-                    Mat desc = new Mat();
-                    orb.detectAndCompute(grayTpl, new Mat(), kp, desc);
-                    tplKeyPoints.add(kp);
-                    tplDescriptors.add(desc);
-                    grayTpl.release();
+                    tplKeyPoints.add(bank.getKeyPoints(t));
+                    tplDescriptors.add(bank.getDescriptors(t));
                 }
 
                 Mat grayScene = new Mat();
@@ -304,11 +276,7 @@ public class ImgService extends KiboRpcService {
 
         // Release resources
         // targetImage.release();
-        for (Mat template : templates) {
-            if (template != null) {
-                template.release();
-            }
-        }
+        // Templates belong to the shared template bank and are not released here
     }
 
     @Override
@@ -0,0 +1,299 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 運動學取樣器：背景執行緒以固定頻率呼叫 getRobotKinematics，寫入無鎖環形緩衝區。
+ * 單一寫入者、多讀取者；每個槽位以序號 (seqlock) 保護，讀取者從不阻塞，
+ * 讀到寫入中或已被覆寫的槽位時重試或略過。樣本以原始 double 位元存放，不配置物件。
+ */
+public class KinematicsSampler {
+    private static final String TAG = "KinematicsSampler";
+
+    // 槽位配置：[序號, 時間, 位置 xyz, 姿態 xyzw, 線速度 xyz, 角速度 xyz, 信心度]
+    private static final int SEQ = 0;
+    private static final int TIME = 1;
+    private static final int POSITION = 2;
+    private static final int ORIENTATION = 5;
+    private static final int LINEAR_VELOCITY = 9;
+    private static final int ANGULAR_VELOCITY = 12;
+    private static final int CONFIDENCE = 15;
+    private static final int STRIDE = 16;
+    private static final int MAX_READ_RETRIES = 4;
+
+    private final ProfiledApi api;
+    private final long periodMillis;
+    private final int capacity; // 2 的次方
+    private final AtomicLongArray slots;
+    private final AtomicLong published = new AtomicLong(); // 已發布的樣本總數
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param api API 計時代理。
+     * @param periodMillis 取樣週期 (毫秒)。
+     * @param capacity 緩衝區容量，會向上取 2 的次方。
+     */
+    public KinematicsSampler(ProfiledApi api, long periodMillis, int capacity) {
+        this.api = api;
+        this.periodMillis = periodMillis;
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicLongArray(this.capacity * STRIDE);
+    }
+
+    public synchronized KinematicsSampler start() {
+        if (running) return this;
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+        Log.i(TAG, "started: period = " + periodMillis + " ms, capacity = " + capacity);
+        return this;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    private void loop() {
+        while (running) {
+            long tickStart = System.nanoTime();
+            try {
+                Kinematics kinematics = api.sampleRobotKinematics();
+                if (kinematics != null) publish(kinematics, System.nanoTime());
+            } catch (RuntimeException e) {
+                Log.w(TAG, "sampling failed: " + e.getMessage(), e);
+            }
+            long remaining = periodMillis - (System.nanoTime() - tickStart) / 1_000_000L;
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // 單一寫入者：序號設為奇數 → 寫入欄位 → 序號設為下一個偶數 → 發布
+    void publish(Kinematics kinematics, long timestampNanos) {
+        long index = published.get();
+        int base = (int) (index & (capacity - 1)) * STRIDE;
+        long sequence = 2 * (index / capacity) + 1;
+        slots.set(base + SEQ, sequence);
+
+        Point p = kinematics.getPosition();
+        Quaternion q = kinematics.getOrientation();
+        double[] v = kinematics.getLinearVelocity().toArray();
+        double[] w = kinematics.getAngularVelocity().toArray();
+        slots.lazySet(base + TIME, timestampNanos);
+        put(base + POSITION, p.getX(), p.getY(), p.getZ());
+        put(base + ORIENTATION, q.getX(), q.getY(), q.getZ());
+        slots.lazySet(base + ORIENTATION + 3, Double.doubleToRawLongBits(q.getW()));
+        put(base + LINEAR_VELOCITY, v[0], v[1], v[2]);
+        put(base + ANGULAR_VELOCITY, w[0], w[1], w[2]);
+        slots.lazySet(base + CONFIDENCE, kinematics.getConfidence() == null ? -1 : kinematics.getConfidence().ordinal());
+
+        slots.set(base + SEQ, sequence + 1);
+        published.set(index + 1);
+    }
+
+    private void put(int offset, double x, double y, double z) {
+        slots.lazySet(offset, Double.doubleToRawLongBits(x));
+        slots.lazySet(offset + 1, Double.doubleToRawLongBits(y));
+        slots.lazySet(offset + 2, Double.doubleToRawLongBits(z));
+    }
+
+    private double get(int offset) {
+        return Double.longBitsToDouble(slots.get(offset));
+    }
+
+    /**
+     * 讀取第 index 個樣本 (從 0 起算)。
+     * @return 成功時為 true；樣本尚未寫入或已被覆寫時為 false。
+     */
+    public boolean read(long index, Sample out) {
+        if (index < 0 || index >= published.get()) return false;
+        int base = (int) (index & (capacity - 1)) * STRIDE;
+        long expected = 2 * (index / capacity) + 2;
+        for (int attempt = 0; attempt < MAX_READ_RETRIES; attempt++) {
+            long before = slots.get(base + SEQ);
+            if (before != expected) {
+                if (before > expected) return false; // 已被覆寫
+                continue; // 寫入中
+            }
+            out.timestampNanos = slots.get(base + TIME);
+            out.px = get(base + POSITION);
+            out.py = get(base + POSITION + 1);
+            out.pz = get(base + POSITION + 2);
+            out.qx = get(base + ORIENTATION);
+            out.qy = get(base + ORIENTATION + 1);
+            out.qz = get(base + ORIENTATION + 2);
+            out.qw = get(base + ORIENTATION + 3);
+            out.vx = get(base + LINEAR_VELOCITY);
+            out.vy = get(base + LINEAR_VELOCITY + 1);
+            out.vz = get(base + LINEAR_VELOCITY + 2);
+            out.wx = get(base + ANGULAR_VELOCITY);
+            out.wy = get(base + ANGULAR_VELOCITY + 1);
+            out.wz = get(base + ANGULAR_VELOCITY + 2);
+            out.confidence = (int) slots.get(base + CONFIDENCE);
+            if (slots.get(base + SEQ) == before) {
+                out.index = index;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 讀取最新的樣本。
+     * @return 尚無樣本時為 false。
+     */
+    public boolean latest(Sample out) {
+        for (int attempt = 0; attempt < MAX_READ_RETRIES; attempt++) {
+            long index = published.get() - 1;
+            if (index < 0) return false;
+            if (read(index, out)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 計算最近 windowNanos 內樣本的平均：位置、速度取算術平均，姿態對齊半球後平均再正規化。
+     * @return 平均使用的樣本數，0 表示視窗內沒有樣本 (out 不變)。
+     */
+    public int average(long windowNanos, Sample out) {
+        Sample s = new Sample();
+        long newest = published.get() - 1;
+        long cutoff = System.nanoTime() - windowNanos;
+        int count = 0;
+        double px = 0, py = 0, pz = 0, qx = 0, qy = 0, qz = 0, qw = 0;
+        double vx = 0, vy = 0, vz = 0, wx = 0, wy = 0, wz = 0;
+        double rx = 0, ry = 0, rz = 0, rw = 0; // 半球參考
+        long timestamp = 0;
+        int confidence = -1;
+        for (long i = newest; i >= 0 && i > newest - capacity; i--) {
+            if (!read(i, s) || s.timestampNanos < cutoff) break;
+            if (count == 0) {
+                rx = s.qx;
+                ry = s.qy;
+                rz = s.qz;
+                rw = s.qw;
+                timestamp = s.timestampNanos;
+                confidence = s.confidence;
+            }
+            double sign = s.qx * rx + s.qy * ry + s.qz * rz + s.qw * rw < 0 ? -1.0 : 1.0;
+            px += s.px;
+            py += s.py;
+            pz += s.pz;
+            qx += sign * s.qx;
+            qy += sign * s.qy;
+            qz += sign * s.qz;
+            qw += sign * s.qw;
+            vx += s.vx;
+            vy += s.vy;
+            vz += s.vz;
+            wx += s.wx;
+            wy += s.wy;
+            wz += s.wz;
+            confidence = Math.max(confidence, s.confidence); // 取最差的信心度
+            count++;
+        }
+        if (count == 0) return 0;
+        double inv = 1.0 / count;
+        double qn = Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+        double qinv = qn == 0 ? 0.0 : 1.0 / qn;
+        out.index = newest;
+        out.timestampNanos = timestamp;
+        out.px = px * inv;
+        out.py = py * inv;
+        out.pz = pz * inv;
+        out.qx = qx * qinv;
+        out.qy = qy * qinv;
+        out.qz = qz * qinv;
+        out.qw = qw * qinv;
+        out.vx = vx * inv;
+        out.vy = vy * inv;
+        out.vz = vz * inv;
+        out.wx = wx * inv;
+        out.wy = wy * inv;
+        out.wz = wz * inv;
+        out.confidence = confidence;
+        return count;
+    }
+
+    /**
+     * 靜定判斷：最近 windowNanos 內至少有 minSamples 個樣本，且每個樣本的線速度、角速度都低於門檻。
+     */
+    public boolean isSettled(long windowNanos, int minSamples, double maxLinearSpeed, double maxAngularSpeed) {
+        Sample s = new Sample();
+        long newest = published.get() - 1;
+        long cutoff = System.nanoTime() - windowNanos;
+        int count = 0;
+        for (long i = newest; i >= 0 && i > newest - capacity; i--) {
+            if (!read(i, s) || s.timestampNanos < cutoff) break;
+            if (s.linearSpeed() > maxLinearSpeed || s.angularSpeed() > maxAngularSpeed) return false;
+            count++;
+        }
+        return count >= minSamples;
+    }
+
+    /**
+     * 單一運動學樣本，欄位皆為原始型別，可重複使用。
+     */
+    public static final class Sample {
+        public long index;
+        public long timestampNanos;
+        public double px, py, pz;
+        public double qx, qy, qz, qw;
+        public double vx, vy, vz;
+        public double wx, wy, wz;
+        public int confidence; // Kinematics.Confidence 的 ordinal，-1 表示未知
+
+        public double linearSpeed() {
+            return Math.sqrt(vx * vx + vy * vy + vz * vz);
+        }
+
+        public double angularSpeed() {
+            return Math.sqrt(wx * wx + wy * wy + wz * wz);
+        }
+
+        public Frame toFrame() {
+            return new Frame(new Vector(px, py, pz), new Quater((float) qx, (float) qy, (float) qz, (float) qw));
+        }
+
+        @SuppressLint("DefaultLocale")
+        @Override
+        public String toString() {
+            return String.format("Sample[#%d, p=(%.3f, %.3f, %.3f), |v|=%.4f, |w|=%.4f, confidence=%d]",
+                index, px, py, pz, linearSpeed(), angularSpeed(), confidence);
+        }
+    }
+}
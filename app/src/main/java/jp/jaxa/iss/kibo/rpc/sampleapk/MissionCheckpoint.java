@@ -0,0 +1,285 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 任務狀態檢查點：區域資訊 (位置、物品、Aruco)、目標物品與已完成的階段，
+ * 以二進位格式寫入 dir/mission.ckpt。影像不內嵌，另存為 PNG 並只記錄檔名。
+ * 每完成一個階段寫入一次 (先寫暫存檔再改名，中斷時不會留下半個檔案)；
+ * 重新執行時還原，已完成的階段 (含其移動) 可直接略過。
+ * 超過 maxAgeMillis 的檢查點視為上一次任務留下的，不會還原。
+ *
+ * 格式 (big-endian)：
+ * magic, version, createdMillis, [phases], targetItem?, [areas]
+ * area = id, location?, regionRef, paperRef, aruco?, [items]
+ */
+@SuppressWarnings("try")
+class MissionCheckpoint {
+    private static final String TAG = "MissionCheckpoint";
+    private static final int MAGIC = 0x4B434B50; // "KCKP"
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "mission.ckpt";
+
+    private final File dir;
+    private final long maxAgeMillis;
+    private final Set<String> completed = new LinkedHashSet<>();
+    private final Map<Integer, AreaInfo> areas = new LinkedHashMap<>();
+    private final Set<String> writtenImages = new HashSet<>(); // 已寫入磁碟的影像檔名
+    private ItemInfo targetItem;
+    private long createdMillis = System.currentTimeMillis();
+
+    /**
+     * @param dir 檢查點與影像的目錄。
+     * @param maxAgeMillis 檢查點的有效期限 (毫秒)。
+     */
+    MissionCheckpoint(File dir, long maxAgeMillis) {
+        this.dir = dir;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * 從磁碟還原。
+     * @return 成功還原時為 true；沒有檢查點、已過期或格式錯誤時為 false，狀態為空。
+     */
+    boolean restore(ProfiledApi api) {
+        File file = new File(dir, FILE_NAME);
+        if (!file.isFile()) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                Log.w(TAG, "ignore " + file + ": unknown format");
+                return false;
+            }
+            long created = in.readLong();
+            long age = System.currentTimeMillis() - created;
+            if (age < 0 || age > maxAgeMillis) {
+                Log.i(TAG, "ignore " + file + ": stale (" + age + " ms)");
+                return false;
+            }
+
+            Set<String> phases = new LinkedHashSet<>();
+            for (int n = in.readUnsignedShort(); n > 0; n--) phases.add(in.readUTF());
+            ItemInfo target = in.readBoolean() ? readItem(in) : null;
+            Map<Integer, AreaInfo> restored = new LinkedHashMap<>();
+            for (int n = in.readUnsignedShort(); n > 0; n--) {
+                AreaInfo area = readArea(in, api);
+                restored.put(area.getId(), area);
+            }
+
+            createdMillis = created;
+            completed.clear();
+            completed.addAll(phases);
+            targetItem = target;
+            areas.clear();
+            areas.putAll(restored);
+            Log.i(TAG, "restored " + file + ": completed = " + completed + ", target = " + targetItem);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "failed to restore " + file + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    boolean isComplete(String phase) {
+        return completed.contains(phase);
+    }
+
+    AreaInfo getArea(int areaId) {
+        return areas.get(areaId);
+    }
+
+    List<AreaInfo> getAreas() {
+        return new ArrayList<>(areas.values());
+    }
+
+    ItemInfo getTargetItem() {
+        return targetItem;
+    }
+
+    /**
+     * 記錄區域結果並標記 "area" + id 完成。沒有辨識出物品 (校正或推論失敗、逾時) 時不記錄，
+     * 下一次執行會重試此區域。
+     * @return 是否已記錄。
+     */
+    boolean completeArea(AreaInfo area) {
+        if (area == null || area.getItems().isEmpty()) {
+            Log.w(TAG, "area" + (area == null ? "?" : area.getId()) + " has no items, not checkpointed");
+            return false;
+        }
+        areas.put(area.getId(), area);
+        complete("area" + area.getId());
+        return true;
+    }
+
+    /**
+     * 記錄太空人辨識出的目標物品並標記 "astronaut" 完成。沒有辨識出目標時不記錄，下一次執行會重試。
+     * @return 是否已記錄。
+     */
+    boolean completeAstronaut(ItemInfo item) {
+        if (item == null) {
+            Log.w(TAG, "no target item, astronaut not checkpointed");
+            return false;
+        }
+        targetItem = item;
+        complete("astronaut");
+        return true;
+    }
+
+    /**
+     * 標記階段完成並寫入磁碟。
+     */
+    void complete(String phase) {
+        completed.add(phase);
+        save();
+    }
+
+    /**
+     * 任務結束後刪除檢查點，下一次執行從頭開始。
+     */
+    void clear() {
+        completed.clear();
+        areas.clear();
+        writtenImages.clear();
+        targetItem = null;
+        createdMillis = System.currentTimeMillis();
+        if (!new File(dir, FILE_NAME).delete()) Log.w(TAG, "no checkpoint to delete");
+    }
+
+    private void save() {
+        File file = new File(dir, FILE_NAME);
+        File temp = new File(dir, FILE_NAME + ".tmp");
+        try (Profiler.Span span = Profiler.start("checkpoint.save")) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(createdMillis);
+                out.writeShort(completed.size());
+                for (String phase: completed) out.writeUTF(phase);
+                out.writeBoolean(targetItem != null);
+                if (targetItem != null) writeItem(out, targetItem);
+                out.writeShort(areas.size());
+                for (AreaInfo area: areas.values()) writeArea(out, area);
+            }
+            if (!temp.renameTo(file)) throw new IOException("rename " + temp + " failed");
+            Log.i(TAG, "saved " + file + " (" + file.length() + " bytes): completed = " + completed);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to save " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void writeArea(DataOutputStream out, AreaInfo area) throws IOException {
+        out.writeInt(area.getId());
+        Frame location = area.getLocation();
+        out.writeBoolean(location != null);
+        if (location != null) {
+            out.writeDouble(location.getPosition().getX());
+            out.writeDouble(location.getPosition().getY());
+            out.writeDouble(location.getPosition().getZ());
+            out.writeFloat(location.getOrientation().getX());
+            out.writeFloat(location.getOrientation().getY());
+            out.writeFloat(location.getOrientation().getZ());
+            out.writeFloat(location.getOrientation().getW());
+        }
+        out.writeUTF(writeImage(area.getRegion(), "area" + area.getId() + "_region.png"));
+        out.writeUTF(writeImage(area.getPaper(), "area" + area.getId() + "_paper.png"));
+
+        ArucoResult aruco = area.getArucoResult();
+        boolean hasAruco = aruco != null && aruco.corners != null && !aruco.corners.empty();
+        out.writeBoolean(hasAruco);
+        if (hasAruco) {
+            Mat corners = new Mat();
+            aruco.corners.convertTo(corners, CvType.CV_32F);
+            float[] data = new float[(int) corners.total() * corners.channels()];
+            corners.get(0, 0, data);
+            out.writeDouble(aruco.id);
+            out.writeShort(corners.rows());
+            out.writeShort(corners.cols());
+            out.writeByte(corners.channels());
+            for (float value: data) out.writeFloat(value);
+        }
+
+        List<ItemInfo> items = area.getItems();
+        out.writeShort(items.size());
+        for (ItemInfo item: items) writeItem(out, item);
+    }
+
+    private AreaInfo readArea(DataInputStream in, ProfiledApi api) throws IOException {
+        int id = in.readInt();
+        Frame location = null;
+        if (in.readBoolean()) {
+            Vector position = new Vector(in.readDouble(), in.readDouble(), in.readDouble());
+            location = new Frame(position, new Quater(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+        }
+        Image region = readImage(in.readUTF(), api);
+        Image paper = readImage(in.readUTF(), api);
+
+        ArucoResult aruco = null;
+        if (in.readBoolean()) {
+            double arucoId = in.readDouble();
+            int rows = in.readUnsignedShort();
+            int cols = in.readUnsignedShort();
+            int channels = in.readUnsignedByte();
+            float[] data = new float[rows * cols * channels];
+            for (int i = 0; i < data.length; i++) data[i] = in.readFloat();
+            Mat corners = new Mat(rows, cols, CvType.CV_32FC(channels));
+            corners.put(0, 0, data);
+            aruco = new ArucoResult(corners, arucoId);
+        }
+
+        List<ItemInfo> items = new ArrayList<>();
+        for (int n = in.readUnsignedShort(); n > 0; n--) items.add(readItem(in));
+        return new AreaInfo(id, location, region, paper, aruco, items);
+    }
+
+    private static void writeItem(DataOutputStream out, ItemInfo item) throws IOException {
+        out.writeUTF(item.getName());
+        out.writeShort(item.getNumber());
+    }
+
+    private static ItemInfo readItem(DataInputStream in) throws IOException {
+        return new ItemInfo(in.readUTF(), in.readShort());
+    }
+
+    // 影像另存為 PNG，只寫一次；回傳參照的檔名，沒有影像時為空字串
+    private String writeImage(Image image, String name) {
+        if (image == null || image.getMatImage() == null || image.getMatImage().empty()) return "";
+        if (writtenImages.contains(name)) return name;
+        File file = new File(dir, name);
+        if (!Imgcodecs.imwrite(file.getAbsolutePath(), image.getMatImage())) {
+            Log.w(TAG, "failed to write " + file);
+            return "";
+        }
+        writtenImages.add(name);
+        return name;
+    }
+
+    private Image readImage(String name, ProfiledApi api) {
+        if (name.isEmpty()) return null;
+        Mat mat = Imgcodecs.imread(new File(dir, name).getAbsolutePath(), Imgcodecs.IMREAD_UNCHANGED);
+        if (mat.empty()) {
+            Log.w(TAG, "missing image reference " + name);
+            return null;
+        }
+        writtenImages.add(name);
+        return new Image(mat, api);
+    }
+}
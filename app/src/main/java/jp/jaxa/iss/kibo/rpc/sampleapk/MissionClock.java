@@ -0,0 +1,165 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 任務時鐘：追蹤全域截止時間與各階段的預算。
+ * 預先登記各階段的預算 (依序)，執行中比較剩餘時間與尚未完成階段的預算總和，
+ * 判斷目前是否落後，讓呼叫端降級 (減少錨定、縮短等待、略過除錯存檔)。
+ * 截止前固定保留 reserve 給 reportRoundingCompletion、notifyRecognitionItem 與 takeTargetItemSnapshot。
+ */
+public class MissionClock {
+    private static final String TAG = "MissionClock";
+
+    public enum Level {
+        NORMAL, // 時間充裕
+        HURRY, // 落後：剩餘時間不足以照預算完成所有階段
+        CRITICAL // 嚴重落後：剩餘時間不到預算的一半，只做必要的事
+    }
+
+    private final long totalMillis;
+    private final long reserveMillis;
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private long startNanos = -1;
+
+    /**
+     * @param totalMillis 任務總時間。
+     * @param reserveMillis 截止前保留給最終回報的時間。
+     */
+    public MissionClock(long totalMillis, long reserveMillis) {
+        this.totalMillis = totalMillis;
+        this.reserveMillis = reserveMillis;
+    }
+
+    /**
+     * 登記一個階段的預算。
+     * @param mandatory 必要階段 (例如太空人、目標)，其預算永遠保留，不會被其他階段借用。
+     */
+    public MissionClock plan(String phase, long budgetMillis, boolean mandatory) {
+        phases.put(phase, new Phase(budgetMillis, mandatory));
+        return this;
+    }
+
+    public MissionClock start() {
+        startNanos = System.nanoTime();
+        Log.i(TAG, "start: total = " + totalMillis + " ms, reserve = " + reserveMillis + " ms, planned = " + plannedRemaining(null, false) + " ms");
+        return this;
+    }
+
+    public long elapsedMillis() {
+        return startNanos < 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000L;
+    }
+
+    public long remainingMillis() {
+        return totalMillis - elapsedMillis();
+    }
+
+    /**
+     * 扣除最終回報保留時間後，可自由使用的時間。
+     */
+    public long availableMillis() {
+        return remainingMillis() - reserveMillis;
+    }
+
+    /**
+     * 扣除所有尚未完成的必要階段預算後，還可額外使用的時間 (可能為負)。
+     */
+    public long spareMillis() {
+        return availableMillis() - plannedRemaining(null, true);
+    }
+
+    public void begin(String phase) {
+        Phase p = phases.get(phase);
+        if (p == null) {
+            p = new Phase(0, false);
+            phases.put(phase, p);
+        }
+        p.startMillis = elapsedMillis();
+        Log.i(TAG, "begin " + phase + " at " + p.startMillis + " ms, level = " + level() + ", budget = " + budget(phase) + " ms");
+    }
+
+    public void end(String phase) {
+        Phase p = phases.get(phase);
+        if (p == null || p.done) return;
+        p.done = true;
+        long used = elapsedMillis() - p.startMillis;
+        Log.i(TAG, "end " + phase + ": " + used + " / " + p.budgetMillis + " ms, remaining = " + remainingMillis() + " ms");
+    }
+
+    /**
+     * 標記從檢查點還原的階段：不再執行，預算釋出給其他階段，也不記錄耗時。
+     */
+    public void restored(String phase) {
+        Phase p = phases.get(phase);
+        if (p == null) {
+            p = new Phase(0, false);
+            phases.put(phase, p);
+        }
+        if (p.done) return;
+        p.done = true;
+        Log.i(TAG, "restored " + phase + ": " + p.budgetMillis + " ms released, remaining = " + remainingMillis() + " ms");
+    }
+
+    /**
+     * 目前的落後程度：比較可用時間與尚未完成階段的預算總和。
+     */
+    public Level level() {
+        long planned = plannedRemaining(null, false);
+        long available = availableMillis();
+        if (available >= planned) return Level.NORMAL;
+        if (available >= planned / 2) return Level.HURRY;
+        return Level.CRITICAL;
+    }
+
+    /**
+     * 階段可用的時間：落後時依比例縮減，且不侵占其後必要階段的預算。
+     */
+    public long budget(String phase) {
+        Phase p = phases.get(phase);
+        long own = p == null ? 0 : p.budgetMillis;
+        long planned = plannedRemaining(null, false);
+        long available = Math.max(0, availableMillis());
+        long scaled = planned <= 0 ? own : (long) (own * Math.min(1.0, (double) available / planned));
+        long protectedMillis = plannedRemaining(phase, true);
+        return Math.max(0, Math.min(scaled, available - protectedMillis));
+    }
+
+    /**
+     * 是否還來得及開始一個非必要階段：扣掉其後所有必要階段的預算後，至少還有 minimumMillis。
+     */
+    public boolean canAfford(String phase, long minimumMillis) {
+        return availableMillis() - plannedRemaining(phase, true) >= minimumMillis;
+    }
+
+    // 尚未完成階段的預算總和；exclude 不計入，mandatoryOnly 時只計必要階段
+    private long plannedRemaining(String exclude, boolean mandatoryOnly) {
+        long sum = 0;
+        for (Map.Entry<String, Phase> entry: phases.entrySet()) {
+            Phase p = entry.getValue();
+            if (p.done || entry.getKey().equals(exclude)) continue;
+            if (mandatoryOnly && !p.mandatory) continue;
+            sum += p.budgetMillis;
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "MissionClock{ elapsed = " + elapsedMillis() + " ms, remaining = " + remainingMillis() + " ms, level = " + level() + " }";
+    }
+
+    private static class Phase {
+        final long budgetMillis;
+        final boolean mandatory;
+        long startMillis;
+        boolean done;
+
+        Phase(long budgetMillis, boolean mandatory) {
+            this.budgetMillis = budgetMillis;
+            this.mandatory = mandatory;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任務排程：起點固定、終點固定 (例如太空人)，中間的停靠點順序自由，
+ * 即帶有先後限制的小型 TSP。以 Held–Karp 動態規劃求最佳順序，O(2^n · n²)，
+ * 本任務只有 4 個區域，成本模型只需呼叫 n² + 2n 次。
+ */
+public class MissionScheduler {
+    private static final String TAG = "MissionScheduler";
+    private static final int MAX_STOPS = 12; // 2^12 · 12 個狀態以內
+
+    private final CostModel costModel;
+
+    public MissionScheduler(CostModel costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * 計算最佳拜訪順序：start → (stops 的某個排列) → end。
+     * @param start 起點座標系。
+     * @param stops 必須拜訪的停靠點，鍵為識別碼，值為接近座標系；
+     *              多個鍵共用同一個座標系物件 (例如同一個勘查點) 時，彼此之間不需移動，成本為 0。
+     * @param end 最後必須抵達的座標系，null 表示不限終點。
+     * @return 依序拜訪的停靠點鍵值。
+     */
+    public <K> List<K> plan(Frame start, Map<K, Frame> stops, Frame end) {
+        List<K> keys = new ArrayList<>(stops.keySet());
+        int n = keys.size();
+        if (n == 0) return keys;
+        if (n > MAX_STOPS) {
+            Log.w(TAG, n + " stops exceed " + MAX_STOPS + ", keeping the given order");
+            return keys;
+        }
+
+        // 預先計算所有成本
+        double[] fromStart = new double[n];
+        double[] toEnd = new double[n];
+        double[][] between = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            Frame a = stops.get(keys.get(i));
+            fromStart[i] = cost(start, a);
+            toEnd[i] = end == null ? 0.0 : cost(a, end);
+            for (int j = 0; j < n; j++) {
+                if (i != j) between[i][j] = cost(a, stops.get(keys.get(j)));
+            }
+        }
+
+        // cost[mask][i]：拜訪完 mask 中的停靠點且最後停在 i 的最小成本
+        int full = (1 << n) - 1;
+        double[][] cost = new double[1 << n][n];
+        int[][] parent = new int[1 << n][n];
+        for (double[] row: cost) Arrays.fill(row, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < n; i++) {
+            cost[1 << i][i] = fromStart[i];
+            parent[1 << i][i] = -1;
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            for (int i = 0; i < n; i++) {
+                double c = cost[mask][i];
+                if (c == Double.POSITIVE_INFINITY) continue;
+                for (int j = 0; j < n; j++) {
+                    if ((mask & (1 << j)) != 0) continue;
+                    int nextMask = mask | (1 << j);
+                    double d = c + between[i][j];
+                    if (d < cost[nextMask][j]) {
+                        cost[nextMask][j] = d;
+                        parent[nextMask][j] = i;
+                    }
+                }
+            }
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        int last = -1;
+        for (int i = 0; i < n; i++) {
+            double d = cost[full][i] + toEnd[i];
+            if (d < best) {
+                best = d;
+                last = i;
+            }
+        }
+
+        List<K> order = new ArrayList<>(n);
+        for (int mask = full, i = last; i >= 0; ) {
+            order.add(keys.get(i));
+            int previous = parent[mask][i];
+            mask &= ~(1 << i);
+            i = previous;
+        }
+        Collections.reverse(order);
+        Log.i(TAG, "order: " + order + ", estimated cost: " + best + " s");
+        return order;
+    }
+
+    /**
+     * 依給定順序拜訪的估計成本，規則與 plan 相同 (共用同一個座標系物件的停靠點之間成本為 0)。
+     * @param order 拜訪順序，元素須為 stops 的鍵。
+     * @return 估計的移動時間 (秒)。
+     */
+    public <K> double estimateCost(Frame start, List<K> order, Map<K, Frame> stops, Frame end) {
+        double total = 0.0;
+        Frame at = start;
+        for (K key: order) {
+            Frame next = stops.get(key);
+            total += cost(at, next);
+            at = next;
+        }
+        if (end != null) total += cost(at, end);
+        return total;
+    }
+
+    private double cost(Frame from, Frame to) {
+        return from == to ? 0.0 : costModel.estimateCost(from, to);
+    }
+
+    /**
+     * 從多個可行的接近座標系中選出成本最低者，例如回到目標區域時，
+     * 比較錨定後記錄的位置與標稱的快照位置。只比較移動成本，
+     * 呼叫端須先排除不符合任務要求 (例如拍快照的距離) 的座標系。
+     * @param from 目前座標系。
+     * @param candidates 候選的接近座標系，皆須可行，不可為空。
+     * @return 成本最低的候選座標系。
+     */
+    public Frame chooseApproach(Frame from, List<Frame> candidates) {
+        Frame best = null;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (Frame candidate: candidates) {
+            double c = costModel.estimateCost(from, candidate);
+            if (c < bestCost) {
+                bestCost = c;
+                best = candidate;
+            }
+        }
+        Log.i(TAG, "approach: " + best + ", estimated cost: " + bestCost + " s");
+        return best;
+    }
+}
@@ -0,0 +1,238 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import gov.nasa.arc.astrobee.Result;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 移動遙測：記錄 PathPlanner.moveTo 每一段的起點、目標、耗時與結果，
+ * 並以最小平方法擬合單段移動時間 t = a + b·距離 + c·角度。
+ * 伺服、錨定等短距離修正不經過規劃路徑，不納入擬合。
+ * 正規方程的累加量在任務結束時存檔，下一次執行時接續累積；樣本不足前改用 prior 成本模型。
+ */
+public class MotionTelemetry implements CostModel {
+    private static final String TAG = "MotionTelemetry";
+    private static final int MIN_SAMPLES = 4; // 擬合所需的最少樣本數
+
+    private final PathPlanner planner; // 非 null 時依規劃路徑逐段估計
+    private final CostModel prior;
+    private final List<Record> records = new ArrayList<>();
+    private File store;
+
+    // 正規方程 X^T X (對稱，只存上三角) 與 X^T t，X 的每一列為 (1, d, θ)
+    private double n, sd, sa, sdd, sda, saa;
+    private double st, sdt, sat;
+    private double[] coefficients; // (a, b, c)，未擬合時為 null
+
+    public MotionTelemetry(PathPlanner planner, CostModel prior) {
+        this.planner = planner;
+        this.prior = prior;
+    }
+
+    /**
+     * 設定存檔位置並載入先前累積的資料，呼叫 save() 時寫回。
+     */
+    public MotionTelemetry setStore(File store) {
+        this.store = store;
+        if (store.exists()) {
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(store)) {
+                properties.load(in);
+                n = read(properties, "n");
+                sd = read(properties, "sd");
+                sa = read(properties, "sa");
+                sdd = read(properties, "sdd");
+                sda = read(properties, "sda");
+                saa = read(properties, "saa");
+                st = read(properties, "st");
+                sdt = read(properties, "sdt");
+                sat = read(properties, "sat");
+                fit();
+                Log.i(TAG, "loaded " + (long) n + " samples from " + store + ", model: " + modelString());
+            } catch (IOException | NumberFormatException e) {
+                Log.e(TAG, "failed to load " + store + ": " + e.getMessage(), e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 記錄軌跡的一段移動，start 為前一個 knot。只有成功的移動會納入擬合。
+     */
+    public synchronized void record(Frame start, Frame goal, long durationNanos, Result result) {
+        double distance = new Vec3(start.getPosition()).distance(goal.getPosition());
+        double angle = start.rotationAngle(goal);
+        Record record = new Record(start, goal, distance, angle, durationNanos, result);
+        records.add(record);
+        Log.i(TAG, record.toString());
+
+        if (record.isSucceeded()) {
+            accumulate(distance, angle, durationNanos / 1e9);
+            fit();
+        }
+    }
+
+    public synchronized List<Record> getRecords() {
+        return Collections.unmodifiableList(new ArrayList<>(records));
+    }
+
+    /**
+     * 估計移動成本：有路徑規劃器時，對 moveTo 實際執行的軌跡 (去掉可跳過的航點、旋轉分散到各段) 逐段加總。
+     */
+    @Override
+    public double estimateCost(Frame from, Frame to) {
+        double[] model;
+        synchronized (this) {
+            model = coefficients;
+        }
+        if (model == null) return prior.estimateCost(from, to);
+
+        if (planner == null) {
+            return leg(model, new Vec3(from.getPosition()).distance(to.getPosition()), from.rotationAngle(to));
+        }
+        Trajectory trajectory = planner.trajectory(from, to);
+        double cost = 0.0;
+        for (int i = 1; i <= trajectory.legs(); i++) {
+            cost += leg(model, trajectory.legLength(i), trajectory.rotationAngle(i));
+        }
+        return cost;
+    }
+
+    private static double leg(double[] model, double distance, double angle) {
+        return Math.max(0.0, model[0] + model[1] * distance + model[2] * angle);
+    }
+
+    private void accumulate(double d, double a, double t) {
+        n += 1;
+        sd += d;
+        sa += a;
+        sdd += d * d;
+        sda += d * a;
+        saa += a * a;
+        st += t;
+        sdt += d * t;
+        sat += a * t;
+    }
+
+    // 以克拉瑪法則解 3x3 正規方程，矩陣接近奇異時維持前一次的結果
+    private void fit() {
+        if (n < MIN_SAMPLES) return;
+        double det = det(n, sd, sa, sd, sdd, sda, sa, sda, saa);
+        if (Math.abs(det) < 1e-9 * Math.max(1.0, n * sdd * saa)) {
+            Log.w(TAG, "ill-conditioned fit with " + (long) n + " samples, keeping previous model");
+            return;
+        }
+        double a = det(st, sd, sa, sdt, sdd, sda, sat, sda, saa) / det;
+        double b = det(n, st, sa, sd, sdt, sda, sa, sat, saa) / det;
+        double c = det(n, sd, st, sd, sdd, sdt, sa, sda, sat) / det;
+        coefficients = new double[] {a, b, c};
+    }
+
+    private static double det(double a, double b, double c, double d, double e, double f, double g, double h, double i) {
+        return a * (e * i - f * h) - b * (d * i - f * g) + c * (d * h - e * g);
+    }
+
+    // 將累加量寫回存檔位置，在任務結束時呼叫一次，不放在移動的關鍵路徑上
+    public synchronized void save() {
+        if (store == null) return;
+        Properties properties = new Properties();
+        properties.setProperty("n", Double.toString(n));
+        properties.setProperty("sd", Double.toString(sd));
+        properties.setProperty("sa", Double.toString(sa));
+        properties.setProperty("sdd", Double.toString(sdd));
+        properties.setProperty("sda", Double.toString(sda));
+        properties.setProperty("saa", Double.toString(saa));
+        properties.setProperty("st", Double.toString(st));
+        properties.setProperty("sdt", Double.toString(sdt));
+        properties.setProperty("sat", Double.toString(sat));
+        try (OutputStream out = new FileOutputStream(store)) {
+            properties.store(out, "motion cost model: t = a + b * distance + c * angle");
+        } catch (IOException e) {
+            Log.e(TAG, "failed to save " + store + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static double read(Properties properties, String key) {
+        return Double.parseDouble(properties.getProperty(key, "0"));
+    }
+
+    @SuppressLint("DefaultLocale")
+    private String modelString() {
+        if (coefficients == null) return "prior";
+        return String.format("t = %.3f + %.3f * d + %.3f * θ", coefficients[0], coefficients[1], coefficients[2]);
+    }
+
+    @Override
+    public String toString() {
+        return "MotionTelemetry{ samples = " + (long) n + ", model = " + modelString() + " }";
+    }
+
+    /**
+     * 單次移動指令的紀錄。
+     */
+    public static class Record {
+        private final Frame start;
+        private final Frame goal;
+        private final double distance; // 公尺
+        private final double angle; // 弧度
+        private final long durationNanos;
+        private final boolean succeeded;
+        private final String status;
+
+        Record(Frame start, Frame goal, double distance, double angle, long durationNanos, Result result) {
+            this.start = start;
+            this.goal = goal;
+            this.distance = distance;
+            this.angle = angle;
+            this.durationNanos = durationNanos;
+            this.succeeded = result != null && result.hasSucceeded();
+            this.status = result == null ? "null" : String.valueOf(result.getStatus());
+        }
+
+        public Frame getStart() {
+            return start;
+        }
+
+        public Frame getGoal() {
+            return goal;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+
+        public double getAngle() {
+            return angle;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        @SuppressLint("DefaultLocale")
+        @Override
+        public String toString() {
+            return String.format("leg: %.3f m, %.1f°, %.2f s, %s", distance, Math.toDegrees(angle), durationNanos / 1e9, status);
+        }
+    }
+}
@@ -1,139 +1,89 @@
 package jp.jaxa.iss.kibo.rpc.sampleapk;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import org.opencv.android.Utils;
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.DMatch;
+import org.opencv.core.KeyPoint;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfDMatch;
 import org.opencv.core.MatOfKeyPoint;
-import org.opencv.core.MatOfPoint;
 import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
-import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.features2d.BFMatcher;
 import org.opencv.features2d.ORB;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class ORBObjectDetector extends ObjectDetector {
     private final String TAG = this.getClass().getSimpleName();
 
     // 常數定義，提高可讀性和維護性
-    private static final int ORB_FEATURES = 500; // ORB 檢測器要提取的特徵點數量
+    private static final int ORB_FEATURES = TemplateBank.ORB_FEATURES; // ORB 檢測器要提取的特徵點數量
     private static final int MIN_GOOD_MATCHES = 10; // 執行單應性矩陣計算所需的最小良好匹配點數
+    private static final int MIN_INLIERS = 6; // 接受一個實例所需的最少 RANSAC 內點數
     private static final double KNN_RATIO_THRESHOLD = 0.75; // k-NN 比率測試的閾值 (Lowe's ratio test)
     private static final double RANSAC_REPROJECTION_THRESHOLD = 5.0; // RANSAC 重新投影誤差閾值
-    private static final double DUPLICATE_DISTANCE_THRESHOLD = 10.0; // 移除重複點的距離閾值 (像素)
-
-    // 定義模板文件名稱和對應的物件名稱
-    private final String[] TEMPLATE_FILE_NAMES = {
-            "coin.png",
-            "compass.png",
-            "coral.png",
-            "crystal.png",
-            "diamond.png",
-            "emerald.png",
-            "fossil.png",
-            "key.png",
-            "letter.png",
-            "shell.png",
-            "treasure_box.png"
-    };
-
-    private final String[] TEMPLATE_NAMES = {
-            "coin",
-            "compass",
-            "coral",
-            "crystal",
-            "diamond",
-            "emerald",
-            "fossil",
-            "key",
-            "letter",
-            "shell",
-            "treasure_box"
-    };
-
-    // 儲存已載入的模板圖像 (灰度圖)
-    Mat[] templates;
+
+    // 物件名稱，順序與模板庫相同
+    private final String[] TEMPLATE_NAMES = TemplateBank.NAMES;
+
+    // 共用模板庫：灰階模板、預計算的 ORB 關鍵點與描述子，第一次取用時才載入
+    private final TemplateBank bank;
 
     // ORB 特徵點檢測器和描述符匹配器
     private ORB orb;
     private BFMatcher matcher;
 
-    // 儲存所有模板圖像的關鍵點和描述符，在建構子中預計算一次
-    private List<MatOfKeyPoint> allTplKeyPoints;
-    private List<Mat> allTplDescriptors;
+    // 多模板索引：所有模板的描述子一起訓練進 matcher，第一次偵測時建立
+    private boolean indexed;
+    private int[] templateOfImage; // matcher 的 imgIdx → 模板編號 (沒有描述子的模板不加入)
+    private KeyPoint[][] tplKeyPoints; // 快取的模板關鍵點陣列
 
     /**
-     * 建構子，用於初始化模板圖像並預計算其 ORB 特徵點和描述符。
+     * 建構子，初始化 ORB 與匹配器；模板特徵來自共用模板庫，不再每次從 assets 解碼計算。
      *
      * @param context Android 應用程式的上下文，用於訪問資產。
      */
     public ORBObjectDetector(Context context) {
-        // 初始化 ORB 特徵點檢測器和 BFMatcher 匹配器
+        // 初始化 ORB 特徵點檢測器和 BFMatcher 匹配器 (參數須與模板庫相同)
         orb = ORB.create(ORB_FEATURES);
         matcher = BFMatcher.create(BFMatcher.BRUTEFORCE_HAMMING, false);
+        bank = TemplateBank.get(context);
+    }
 
-        templates = new Mat[TEMPLATE_FILE_NAMES.length];
-        allTplKeyPoints = new ArrayList<>();
-        allTplDescriptors = new ArrayList<>();
-
-        // 載入模板圖像並預計算其關鍵點和描述符
-        for (int i = 0; i < TEMPLATE_FILE_NAMES.length; i++) {
-            try {
-                // 從資產中打開模板圖像文件
-                InputStream inputStream = context.getAssets().open(TEMPLATE_FILE_NAMES[i]);
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                Mat mat = new Mat();
-                Utils.bitmapToMat(bitmap, mat);
-
-                // 釋放 Bitmap 資源以減少記憶體佔用
-                bitmap.recycle();
-
-                // 將圖像轉換為灰度圖
-                // 確保輸入圖像在轉換前不是單通道，如果不是，則會拋出錯誤
-                if (mat.channels() > 1) {
-                    Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
-                }
-                // 如果已經是單通道，則不需要轉換
-
-                // 儲存灰度模板圖像
-                templates[i] = mat;
-
-                // 計算模板的關鍵點和描述符
-                MatOfKeyPoint kp = new MatOfKeyPoint();
-                Mat desc = new Mat();
-                orb.detectAndCompute(mat, new Mat(), kp, desc); // `mat` (灰度模板) 用於計算
-
-                // 儲存計算出的關鍵點和描述符
-                allTplKeyPoints.add(kp);
-                allTplDescriptors.add(desc);
-
-                // 關閉輸入流
-                inputStream.close();
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error loading template image: " + TEMPLATE_FILE_NAMES[i], e);
-                e.printStackTrace();
+    // 將所有模板的描述子加入同一個 matcher 並訓練，之後每張場景只需匹配一次
+    private void ensureIndex() {
+        if (indexed) return;
+        List<Mat> descriptors = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        tplKeyPoints = new KeyPoint[TEMPLATE_NAMES.length][];
+        for (int t = 0; t < TEMPLATE_NAMES.length; t++) {
+            tplKeyPoints[t] = bank.getKeyPoints(t).toArray();
+            Mat desc = bank.getDescriptors(t);
+            if (desc.empty()) {
+                Log.w(TAG, "Template " + TEMPLATE_NAMES[t] + " has no descriptors. Skipping.");
+                continue;
             }
+            descriptors.add(desc);
+            owners.add(t);
         }
+        templateOfImage = new int[owners.size()];
+        for (int i = 0; i < templateOfImage.length; i++) templateOfImage[i] = owners.get(i);
+        matcher.add(descriptors);
+        matcher.train();
+        indexed = true;
+        Log.i(TAG, "trained index over " + descriptors.size() + " templates");
     }
 
     /**
-     * 執行物件偵測。對於每個模板，它會嘗試在輸入圖像中找到匹配項。
+     * 執行物件偵測。場景特徵只提取一次，與所有模板的聯合索引做一次 k-NN 匹配，
+     * 依最近鄰所屬模板投票；只有票數足夠的模板才做單應性驗證與多實例計數。
      *
      * @param inputMat 輸入圖像 (場景圖像)。
      * @return 偵測到的物件資訊列表。
@@ -147,205 +97,67 @@ public class ORBObjectDetector extends ObjectDetector {
             Log.e(TAG, "Input Mat is null or empty.");
             return items; // 返回空列表
         }
+        ensureIndex();
 
         // 將輸入圖像轉換為灰度圖，只執行一次
-        Mat grayScene;
-        // 修正：檢查 inputMat 的通道數，避免對灰度圖進行 BGR2GRAY 轉換
+        Mat grayScene = new Mat();
         if (inputMat.channels() > 1) {
-            grayScene = new Mat();
             Imgproc.cvtColor(inputMat, grayScene, Imgproc.COLOR_BGR2GRAY);
         } else {
-            // 如果 inputMat 已經是灰度圖 (1 通道)，直接使用它或複製一份
-            grayScene = inputMat.clone();
+            inputMat.copyTo(grayScene);
         }
 
-        // 儲存每個模板的匹配數量
-        int[] numMatches = new int[TEMPLATE_FILE_NAMES.length];
-
-        // 遍歷每個模板以進行匹配
-        for (int tempNum = 0; tempNum < templates.length; tempNum++) {
-            // 獲取當前模板的關鍵點和描述符
-            MatOfKeyPoint tplKp = allTplKeyPoints.get(tempNum);
-            Mat tplDesc = allTplDescriptors.get(tempNum);
-
-            // 檢查模板描述符是否為空，避免崩潰
-            if (tplDesc.empty()) {
-                Log.w(TAG, "Template " + TEMPLATE_NAMES[tempNum] + " has no descriptors. Skipping.");
-                numMatches[tempNum] = 0;
-                continue;
-            }
+        // 場景特徵只提取一次
+        MatOfKeyPoint sceneKp = new MatOfKeyPoint();
+        Mat sceneDesc = new Mat();
+        orb.detectAndCompute(grayScene, new Mat(), sceneKp, sceneDesc);
+        grayScene.release();
 
-            // 用於多物件偵測的場景關鍵點和描述符 (初始狀態)
-            MatOfKeyPoint sceneKp = new MatOfKeyPoint();
-            Mat sceneDesc = new Mat();
-            // 注意：這裡只在需要時（即首次或遮罩更新後）計算場景特徵點
-            orb.detectAndCompute(grayScene, new Mat(), sceneKp, sceneDesc);
-
-            // 檢查場景描述符是否為空
-            if (sceneDesc.empty()) {
-                Log.w(TAG, "Scene has no descriptors. Skipping template " + TEMPLATE_NAMES[tempNum] + ".");
-                numMatches[tempNum] = 0;
-                sceneKp.release();
-                sceneDesc.release();
-                continue;
+        // 儲存每個模板的匹配數量
+        int[] numMatches = new int[TEMPLATE_NAMES.length];
+
+        if (!sceneDesc.empty() && templateOfImage.length > 0) {
+            // 快取場景關鍵點座標，之後的點在多邊形內測試直接讀陣列
+            KeyPoint[] sceneKps = sceneKp.toArray();
+            float[] sceneXs = new float[sceneKps.length];
+            float[] sceneYs = new float[sceneKps.length];
+            for (int i = 0; i < sceneKps.length; i++) {
+                sceneXs[i] = (float) sceneKps[i].pt.x;
+                sceneYs[i] = (float) sceneKps[i].pt.y;
             }
 
-            List<org.opencv.core.Point> currentMatchLocations = new ArrayList<>();
-            // 創建一個遮罩，最初全部為白色 (255)，表示所有區域都可被檢測
-            Mat mask = new Mat(grayScene.size(), CvType.CV_8U, new Scalar(255));
-
-            int foundCount = 0;
-            // 迴圈檢測同一物件的多個實例
-            while (true) {
-                // 進行 k-NN 匹配
-                List<MatOfDMatch> knnMatches = new ArrayList<>();
-                matcher.knnMatch(tplDesc, sceneDesc, knnMatches, 2);
-
-                List<DMatch> goodMatches = new ArrayList<>();
-                // 執行 Lowe's ratio test 以篩選良好匹配
-                for (MatOfDMatch matOfD : knnMatches) {
-                    DMatch[] d = matOfD.toArray();
-                    // 確保至少有兩個匹配點，並應用比率測試
-                    if (d.length >= 2 && d[0].distance < KNN_RATIO_THRESHOLD * d[1].distance) {
-                        goodMatches.add(d[0]);
-                    }
-                    matOfD.release(); // 釋放 MatOfDMatch 資源
-                }
-                knnMatches.clear(); // 清空列表
-
-                // 如果良好匹配數量不足，則停止此模板的檢測
-                if (goodMatches.size() < MIN_GOOD_MATCHES) {
-                    break;
-                }
-
-                // 從良好匹配中提取關鍵點
-                List<Point> ptsTpl = new ArrayList<>();
-                List<Point> ptsScn = new ArrayList<>();
-                for (DMatch m : goodMatches) {
-                    ptsTpl.add(tplKp.toList().get(m.queryIdx).pt);
-                    ptsScn.add(sceneKp.toList().get(m.trainIdx).pt);
-                }
-
-                // 將 Point 列表轉換為 MatOfPoint2f
-                MatOfPoint2f mTpl = new MatOfPoint2f();
-                mTpl.fromList(ptsTpl);
-                MatOfPoint2f mScn = new MatOfPoint2f();
-                mScn.fromList(ptsScn);
-
-                Mat H = new Mat();
-                try {
-                    // 計算單應性矩陣 H，使用 RANSAC 濾除離群點
-                    H = Calib3d.findHomography(mTpl, mScn, Calib3d.RANSAC, RANSAC_REPROJECTION_THRESHOLD);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error calculating homography for template " + TEMPLATE_NAMES[tempNum], e);
-                    H.release(); // 確保在異常情況下也釋放 H
-                    break;
-                }
-
-                // 如果單應性矩陣為空，則表示沒有足夠的內點來計算，停止檢測
-                if (H.empty()) {
-                    H.release();
-                    mTpl.release();
-                    mScn.release();
-                    break;
-                }
-
-                // 獲取模板的四個角點
-                Mat tplCorners = new MatOfPoint2f(
-                        new Point(0, 0),
-                        new Point(templates[tempNum].cols(), 0),
-                        new Point(templates[tempNum].cols(), templates[tempNum].rows()),
-                        new Point(0, templates[tempNum].rows())
-                );
-                MatOfPoint2f sceneCorners = new MatOfPoint2f();
-                // 將模板的角點透過單應性矩陣變換到場景圖像中
-                Core.perspectiveTransform(tplCorners, sceneCorners, H);
-
-                // 計算偵測到的物件中心點
-                Point[] scPts = sceneCorners.toArray();
-                double cx = 0, cy = 0;
-                for (Point p : scPts) {
-                    cx += p.x;
-                    cy += p.y;
-                }
-                // 將中心點添加到當前匹配位置列表
-                currentMatchLocations.add(new Point(cx / 4, cy / 4));
-                foundCount++; // 增加找到的實例計數
-
-                // 創建一個區域遮罩，用於將已偵測到的物件從主場景圖像中排除
-                MatOfPoint mop = new MatOfPoint();
-                mop.fromList(Arrays.asList(scPts));
-                Mat regionMask = Mat.zeros(grayScene.size(), CvType.CV_8U); // 初始為黑色
-                List<MatOfPoint> contours = new ArrayList<>();
-                contours.add(mop);
-                // 填充多邊形，將檢測到的區域在 regionMask 中標記為白色 (255)
-                Imgproc.fillPoly(regionMask, contours, new Scalar(255));
-
-                // 從主遮罩中減去已偵測到的區域，以便下次檢測只在剩餘區域進行
-                Core.subtract(mask, regionMask, mask);
-
-                // 基於更新後的遮罩，從原始灰度場景圖像中複製未被遮罩的區域
-                Mat newScene = new Mat();
-                grayScene.copyTo(newScene, mask);
-
-                // 釋放舊的場景關鍵點和描述符
-                sceneKp.release();
-                sceneDesc.release();
-
-                // 在新的、已遮罩的場景圖像上重新計算關鍵點和描述符
-                sceneKp = new MatOfKeyPoint();
-                sceneDesc = new Mat();
-                orb.detectAndCompute(newScene, new Mat(), sceneKp, sceneDesc);
-
-                // 檢查新的場景描述符是否為空，如果是，則表示沒有更多特徵點可供匹配
-                if (sceneDesc.empty()) {
-                    sceneKp.release(); // 釋放空的關鍵點
-                    sceneDesc.release(); // 釋放空的描述符
-                    newScene.release(); // 釋放新場景圖像
-                    // 釋放迴圈內臨時 Mat
-                    H.release();
-                    mTpl.release();
-                    mScn.release();
-                    tplCorners.release();
-                    sceneCorners.release();
-                    mop.release();
-                    regionMask.release();
-                    break;
+            // 場景 → 聯合索引的 k-NN 匹配，Lowe's ratio test 後依模板分組投票
+            List<MatOfDMatch> knnMatches = new ArrayList<>();
+            matcher.knnMatch(sceneDesc, knnMatches, 2);
+            List<List<DMatch>> votes = new ArrayList<>();
+            for (int t = 0; t < TEMPLATE_NAMES.length; t++) votes.add(new ArrayList<DMatch>());
+            for (MatOfDMatch matOfD : knnMatches) {
+                DMatch[] d = matOfD.toArray();
+                if (d.length >= 2 && d[0].distance < KNN_RATIO_THRESHOLD * d[1].distance) {
+                    votes.get(templateOfImage[d[0].imgIdx]).add(d[0]);
                 }
-
-                // 釋放迴圈內臨時 Mat 資源
-                H.release();
-                mTpl.release();
-                mScn.release();
-                tplCorners.release();
-                sceneCorners.release();
-                mop.release();
-                regionMask.release();
-                newScene.release(); // 釋放用於計算新場景的 Mat
+                matOfD.release();
             }
 
-            // 釋放在模板循環外創建的場景特徵點和描述符
-            sceneKp.release();
-            sceneDesc.release();
-            mask.release(); // 釋放最終的遮罩
-
-            // 對當前模板的匹配位置進行去重
-            // 注意：在基於遮罩的多物件偵測策略下，此步驟可能並非嚴格必要，
-            // 因為每次找到的實例應當是獨特的。
-            // 但為保留原邏輯，暫時保留。如果仍有問題，可考慮實作 NMS。
-            List<org.opencv.core.Point> filteredMatches = removeDuplicates(currentMatchLocations);
-            numMatches[tempNum] = filteredMatches.size();
-        }
-
-        // 釋放灰度場景圖像
-        // 只有當 grayScene 是新創建的 Mat 時才需要釋放。
-        // 如果它只是 inputMat 的 clone，那麼釋放 grayScene 也會釋放 inputMat 的底層數據。
-        // 為了安全起見，如果 inputMat 不是由當前方法創建的，則不應該釋放它。
-        // 這裡確保 grayScene 是新創建的才釋放。
-        if (inputMat.channels() > 1) { // 只有在進行過轉換才需要釋放 grayScene
-            grayScene.release();
+            // 只驗證票數足夠的模板，各模板的單應性驗證平行執行，依模板順序寫回
+            List<Integer> candidates = new ArrayList<>();
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int tempNum = 0; tempNum < TEMPLATE_NAMES.length; tempNum++) {
+                if (votes.get(tempNum).size() < MIN_GOOD_MATCHES) continue;
+                final int template = tempNum;
+                final List<DMatch> matches = votes.get(tempNum);
+                candidates.add(tempNum);
+                tasks.add(() -> countInstances(template, matches, sceneXs, sceneYs));
+            }
+            List<Integer> counts = invokeAll(tasks);
+            for (int i = 0; i < candidates.size(); i++) {
+                numMatches[candidates.get(i)] = counts.get(i);
+            }
+        } else {
+            Log.w(TAG, "Scene has no descriptors.");
         }
-
+        sceneKp.release();
+        sceneDesc.release();
 
         // 找到匹配數量最多的模板
         int mostMatchTemplateNum = getMxIndex(numMatches);
@@ -357,42 +169,116 @@ public class ORBObjectDetector extends ObjectDetector {
     }
 
     /**
-     * 移除重複的匹配點。在指定距離閾值內的點被視為重複。
-     * 考慮到 ORB + Homography 的多物件偵測方式，此方法可能不再是最高效或最必要的，
-     * 非最大抑制 (NMS) 對於重疊的邊界框可能是更好的選擇。
+     * 以單應性矩陣驗證一個模板的匹配並計算實例數：每找到一個實例，就把場景點落在其投影多邊形內的匹配
+     * (內點與落在物件上的離群點) 從作用中的匹配移除，只對剩下的匹配重跑 RANSAC，不必重新提取特徵。
+     * 已計數實例上的匹配都被移除，同一個實例不會再被找到一次，因此不需要再以中心距離去除重複。
      *
-     * @param points 原始匹配點列表。
-     * @return 移除了重複點的列表。
+     * @param tempNum 模板編號。
+     * @param matches 投給此模板的匹配 (queryIdx 為場景關鍵點，trainIdx 為模板關鍵點)。
+     * @param sceneXs 快取的場景關鍵點 x 座標。
+     * @param sceneYs 快取的場景關鍵點 y 座標。
+     * @return 實例數。
      */
-    private List<org.opencv.core.Point> removeDuplicates(List<org.opencv.core.Point> points) {
-        List<org.opencv.core.Point> uniquePoints = new ArrayList<>();
-        for (org.opencv.core.Point point : points) {
-            boolean isIncluded = false;
-            for (org.opencv.core.Point uniquePoint : uniquePoints) {
-                double distance = calculateDistance(point, uniquePoint);
-
-                if (distance <= DUPLICATE_DISTANCE_THRESHOLD) {
-                    isIncluded = true;
-                    break;
-                }
+    private int countInstances(int tempNum, List<DMatch> matches, float[] sceneXs, float[] sceneYs) {
+        KeyPoint[] tplKps = tplKeyPoints[tempNum];
+        Mat template = bank.getGray(tempNum);
+        MatOfPoint2f tplCorners = new MatOfPoint2f(
+                new Point(0, 0),
+                new Point(template.cols(), 0),
+                new Point(template.cols(), template.rows()),
+                new Point(0, template.rows())
+        );
+
+        int instances = 0;
+        List<DMatch> active = matches;
+        while (active.size() >= MIN_GOOD_MATCHES) {
+            Point[] ptsTpl = new Point[active.size()];
+            Point[] ptsScn = new Point[active.size()];
+            for (int i = 0; i < active.size(); i++) {
+                DMatch m = active.get(i);
+                ptsTpl[i] = tplKps[m.trainIdx].pt;
+                ptsScn[i] = new Point(sceneXs[m.queryIdx], sceneYs[m.queryIdx]);
+            }
+            MatOfPoint2f mTpl = new MatOfPoint2f(ptsTpl);
+            MatOfPoint2f mScn = new MatOfPoint2f(ptsScn);
+            Mat inlierMask = new Mat();
+            Mat H;
+            try {
+                // 計算單應性矩陣 H，使用 RANSAC 濾除離群點
+                H = Calib3d.findHomography(mTpl, mScn, Calib3d.RANSAC, RANSAC_REPROJECTION_THRESHOLD, inlierMask);
+            } catch (Exception e) {
+                Log.e(TAG, "Error calculating homography for template " + TEMPLATE_NAMES[tempNum], e);
+                mTpl.release();
+                mScn.release();
+                break;
+            }
+            mTpl.release();
+            mScn.release();
+
+            byte[] inliers = new byte[active.size()];
+            int inlierCount = 0;
+            if (!H.empty() && inlierMask.total() == inliers.length) {
+                inlierMask.get(0, 0, inliers);
+                for (byte flag : inliers) if (flag != 0) inlierCount++;
+            }
+            inlierMask.release();
+            // 內點太少表示只是離群點湊出來的，不算實例
+            if (H.empty() || inlierCount < MIN_INLIERS) {
+                H.release();
+                break;
             }
 
-            if (!isIncluded) {
-                uniquePoints.add(point);
+            // 將模板的角點透過單應性矩陣變換到場景圖像中
+            MatOfPoint2f sceneCorners = new MatOfPoint2f();
+            Core.perspectiveTransform(tplCorners, sceneCorners, H);
+            Point[] polygon = sceneCorners.toArray();
+            sceneCorners.release();
+            H.release();
+            // 投影後不是凸四邊形表示單應性退化 (翻轉或扭曲)，不算實例
+            if (!isConvex(polygon)) break;
+            instances++;
+
+            // 移除場景點落在此實例多邊形內的匹配；內點一定會被移除，確保迴圈前進
+            List<DMatch> remaining = new ArrayList<>();
+            for (int i = 0; i < inliers.length; i++) {
+                DMatch m = active.get(i);
+                if (inliers[i] == 0 && !contains(polygon, sceneXs[m.queryIdx], sceneYs[m.queryIdx])) remaining.add(m);
             }
+            active = remaining;
         }
-        return uniquePoints;
+        tplCorners.release();
+
+        return instances;
     }
 
     /**
-     * 計算兩個點之間的歐幾里得距離。
-     *
-     * @param p1 點 1。
-     * @param p2 點 2。
-     * @return 兩個點之間的距離。
+     * 點是否在多邊形內 (射線法)。
      */
-    private double calculateDistance(org.opencv.core.Point p1, org.opencv.core.Point p2) {
-        return Math.sqrt(Math.pow(p2.x - p1.x, 2) + Math.pow(p2.y - p1.y, 2));
+    static boolean contains(Point[] polygon, double x, double y) {
+        boolean inside = false;
+        for (int i = 0, j = polygon.length - 1; i < polygon.length; j = i++) {
+            Point a = polygon[i], b = polygon[j];
+            if ((a.y > y) != (b.y > y) && x < (b.x - a.x) * (y - a.y) / (b.y - a.y) + a.x) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * 多邊形是否為凸多邊形 (相鄰邊的外積同號)。
+     */
+    static boolean isConvex(Point[] polygon) {
+        int sign = 0;
+        for (int i = 0; i < polygon.length; i++) {
+            Point a = polygon[i], b = polygon[(i + 1) % polygon.length], c = polygon[(i + 2) % polygon.length];
+            double cross = (b.x - a.x) * (c.y - b.y) - (b.y - a.y) * (c.x - b.x);
+            if (cross == 0) continue;
+            int s = cross > 0 ? 1 : -1;
+            if (sign != 0 && s != sign) return false;
+            sign = s;
+        }
+        return sign != 0;
     }
 
     /**
@@ -415,37 +301,8 @@ public class ORBObjectDetector extends ObjectDetector {
     }
 
     /**
-     * 釋放偵測器持有的所有 OpenCV Mat 資源。
-     * 建議在偵測器不再使用時呼叫此方法，以避免記憶體洩漏。
+     * 模板與特徵由共用模板庫持有，偵測器本身沒有需要釋放的 Mat。
      */
     public void release() {
-        // 釋放所有模板圖像
-        if (templates != null) {
-            for (Mat template : templates) {
-                if (template != null) {
-                    template.release();
-                }
-            }
-        }
-        // 釋放所有模板的關鍵點和描述符
-        if (allTplKeyPoints != null) {
-            for (MatOfKeyPoint kp : allTplKeyPoints) {
-                if (kp != null) {
-                    kp.release();
-                }
-            }
-            allTplKeyPoints.clear(); // 清空列表
-        }
-        if (allTplDescriptors != null) {
-            for (Mat desc : allTplDescriptors) {
-                if (desc != null) {
-                    desc.release();
-                }
-            }
-            allTplDescriptors.clear(); // 清空列表
-        }
-        // ORB 和 BFMatcher 的 release() 方法通常不要求，它們由 GC 管理
-        // 但如果它們佔用大量原生資源且有明確的 release 方法，則在此處呼叫
-        // 在 OpenCV Java 中，通常不需要顯式釋放 ORB 和 BFMatcher
     }
 }
@@ -2,8 +2,56 @@ package jp.jaxa.iss.kibo.rpc.sampleapk;
 
 import org.opencv.core.Mat;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public abstract class ObjectDetector {
+    private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+    private ForkJoinPool pool;
+
     public abstract List<ItemInfo> detect(Mat inputMat, String imageType);
+
+    /**
+     * 設定平行處理的執行緒數 (預設為 CPU 核心數)，1 表示在呼叫端執行緒依序執行。
+     */
+    public synchronized void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * 以 fork-join pool 平行執行工作，結果依工作順序排列，與依序執行的結果相同。
+     * 工作內的 Mat 須各自配置，輸入影像只能讀取。
+     */
+    protected <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (parallelism <= 1) {
+                for (Callable<T> task: tasks) results.add(task.call());
+                return results;
+            }
+            for (Future<T> future: pool().invokeAll(tasks)) results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (Exception e) {
+            throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+        }
+    }
+
+    private synchronized ForkJoinPool pool() {
+        if (pool == null) pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
 }
@@ -19,11 +19,6 @@ import org.opencv.aruco.Dictionary;
 import org.opencv.aruco.Aruco;
 import org.opencv.calib3d.Calib3d;
 import org.opencv.core.CvType;
-import java.io.InputStream;
-import java.io.IOException;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import org.opencv.android.Utils;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.core.Size;
 import org.opencv.core.Core;
@@ -96,32 +91,13 @@ public class OriginalImgService extends KiboRpcService {
         String[] foundItems = new String[AREA_POINTS.length];
         int[] itemCounts = new int[AREA_POINTS.length];
 
-        // Load template images
+        // Load template images from the shared template bank (decoded once, memory-mapped afterwards)
+        TemplateBank bank = TemplateBank.get(this);
         Mat[] templates = new Mat[TEMPLATE_FILE_NAMES.length];
         for (int i = 0; i < TEMPLATE_FILE_NAMES.length; i++) {
-            try{
-                // Open the template image file in Bitmap from the file name and convert to Mat
-                InputStream inputStream = getAssets().open(TEMPLATE_FILE_NAMES[i]);
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                Mat mat = new Mat();
-                Utils.bitmapToMat(bitmap, mat);
-
-                // Convert the Bitmap to grayscale
-                Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
-
-                // Assign to an array of templates
-                templates[i] = mat;
-
-                // Release the InputStream
-                inputStream.close();
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error loading template image: " + TEMPLATE_FILE_NAMES[i], e);
-                e.printStackTrace();
-            }
+            templates[i] = bank.getGray(i);
         }
 
-
         // Visit each area
         for (int areaId = 0; areaId < AREA_POINTS.length; areaId++) {
             // Move to the current area
@@ -159,8 +135,8 @@ public class OriginalImgService extends KiboRpcService {
             for (int tempNum = 0; tempNum < templates.length; tempNum++) {
                 // number of matches
                 int matchCount = 0;
-                // Coordinates of the match location
-                List<org.opencv.core.Point> matchLocations = new ArrayList<>();
+                // Peaks of every size and angle
+                List<ResponsePeaks.Peak> matchPeaks = new ArrayList<>();
 
                 // Load the template image
                 Mat template = templates[tempNum].clone();
@@ -191,21 +167,8 @@ public class OriginalImgService extends KiboRpcService {
                         double maxVal = mmlr.maxVal;
 
                         if (maxVal >= threshold) {
-                            // Create a mask for the detected region
-                            Mat thresholdResult = new Mat();
-                            Imgproc.threshold(result, thresholdResult, threshold, 1, Imgproc.THRESH_TOZERO);
-
-                            // Get coordinates of the detected region
-                            for(int y=0; y<thresholdResult.rows(); y++){
-                                for(int x=0; x<thresholdResult.cols(); x++){
-                                    if(thresholdResult.get(y, x)[0] > 0){
-                                        matchLocations.add(new org.opencv.core.Point(x, y));
-                                    }
-                                }
-                            }
-
-                            // Release resources
-                            thresholdResult.release();
+                            // Local maxima above the threshold, read in one transfer
+                            matchPeaks.addAll(ResponsePeaks.find(result, threshold));
                         }
 
                         // Release resources
@@ -215,7 +178,8 @@ public class OriginalImgService extends KiboRpcService {
                     }
                 }
 
-                List<org.opencv.core.Point> filteredMatches = removeDuplicates(matchLocations);
+                // Score-ordered suppression within 10 px
+                List<ResponsePeaks.Peak> filteredMatches = ResponsePeaks.suppress(matchPeaks, 10);
                 matchCount += filteredMatches.size();
 
                 // Number of matches
@@ -333,32 +297,6 @@ public class OriginalImgService extends KiboRpcService {
         return rotatedImg;
     }
 
-    private List<org.opencv.core.Point> removeDuplicates(List<org.opencv.core.Point> points) {
-        double length = 10; // within 10 px
-        List<org.opencv.core.Point> uniquePoints = new ArrayList<>();
-        for (org.opencv.core.Point point : points) {
-            boolean isIncluded = false;
-            for (org.opencv.core.Point uniquePoint : uniquePoints) {
-                double distance = calculateDistance(point, uniquePoint);
-
-                if (distance <= length){
-                    isIncluded = true;
-                    break;
-                }
-            }
-
-            if (!isIncluded) {
-                uniquePoints.add(point);
-            }
-        }
-        return uniquePoints;
-    }
-
-    private double calculateDistance(org.opencv.core.Point p1, org.opencv.core.Point p2) {
-        // Calculate the distance between two points using the Euclidean distance formula
-        return Math.sqrt(Math.pow(p2.x - p1.x, 2) + Math.pow(p2.y - p1.y, 2));
-    }
-
     private int getMxIndex(int[] array){
         int max = 0;
         int maxIndex = 0;
@@ -2,29 +2,37 @@ package jp.jaxa.iss.kibo.rpc.sampleapk;
 
 /**
  * 泛型 PID 控制器，可處理任何實現 PIDValue 介面的型別。
+ * 微分項作用在量測值上並經過一階低通濾波，輸出可設定飽和上限，
+ * 飽和時以反算 (back-calculation) 抑制積分飽和。
+ * 時間來源可注入，或直接以 update(processVariable, dt) 指定時間步長。
+ * 演算法本身在 PIDCore，此類別以 PIDValue 的運算 (每次傳回新值) 驅動它。
  * @param <T> 必須是實現 PIDValue 介面的型別。
  */
 public class PIDController<T extends PIDValue<T>> {
-    private double Kp; // 比例增益
-    private double Ki; // 積分增益
-    private double Kd; // 微分增益
-
-    private T setpoint; // 目標值 (泛型型別)
+    /**
+     * 時間來源，預設為 System.nanoTime()，測試或模擬時可替換。
+     */
+    public interface Clock {
+        long nanoTime();
+    }
 
-    private T lastError; // 上一次的誤差 (泛型型別)
-    private T integralSum; // 誤差的累積總和 (泛型型別)
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
 
-    private double integralLimit; // 積分項的標量大小限制 (例如，其 magnitude 的最大值)
+    private final ValueAlgebra<T> algebra = new ValueAlgebra<>();
+    private final PIDCore<Ref<T>> core;
 
-    private long lastUpdateTime; // 上次更新時間
+    // 傳入與傳出 PIDCore 的容器
+    private final Ref<T> input = new Ref<>();
+    private final Ref<T> output = new Ref<>();
 
     // 建構子
     public PIDController(double Kp, double Ki, double Kd, double integralLimit) {
-        this.Kp = Kp;
-        this.Ki = Ki;
-        this.Kd = Kd;
-        this.integralLimit = integralLimit;
-        this.lastUpdateTime = System.nanoTime();
+        core = new PIDCore<>(algebra, Kp, Ki, Kd, integralLimit);
     }
 
     // 可以提供一個不帶 integralLimit 的建構子，使用預設值
@@ -32,87 +40,119 @@ public class PIDController<T extends PIDValue<T>> {
         this(Kp, Ki, Kd, Double.MAX_VALUE); // 預設為不限制積分
     }
 
+    // 設定時間來源
+    public PIDController<T> setClock(Clock clock) {
+        core.setClock(clock);
+        return this;
+    }
+
+    // 設定輸出的 magnitude 上限
+    public PIDController<T> setOutputLimit(double outputLimit) {
+        core.setOutputLimit(outputLimit);
+        return this;
+    }
+
+    // 設定微分低通濾波的時間常數 (秒)
+    public PIDController<T> setDerivativeFilter(double timeConstant) {
+        core.setDerivativeFilter(timeConstant);
+        return this;
+    }
+
+    // 設定反算抗飽和增益，0 表示只做輸出限制、不修正積分
+    public PIDController<T> setBackCalculationGain(double backCalculationGain) {
+        core.setBackCalculationGain(backCalculationGain);
+        return this;
+    }
+
+    // 設定前饋量，null 表示不使用
+    public PIDController<T> setFeedForward(T feedForward) {
+        core.setFeedForward(feedForward == null ? null : input.set(feedForward));
+        return this;
+    }
+
     // 設定目標值
     public void setSetpoint(T setpoint) {
-        this.setpoint = setpoint;
-        reset(); // 當設定新的目標值時，重置 PID 狀態
+        algebra.identity = setpoint.identity(); // 積分的初始值
+        core.setSetpoint(input.set(setpoint)); // 當設定新的目標值時，重置 PID 狀態
     }
 
     // 重置控制器狀態
     public void reset() {
-        // 使用 identity() 來初始化 lastError 和 integralSum
-        if (setpoint != null) {
-            this.lastError = setpoint.identity();
-            this.integralSum = setpoint.identity();
-        } else {
-            // 如果 setpoint 尚未設定，無法取得 T 的 identity 實例
-            // 在這種情況下，在第一次 update 時檢查並初始化
-            this.lastError = null;
-            this.integralSum = null;
-        }
-        this.lastUpdateTime = System.nanoTime();
+        core.reset();
     }
 
     /**
-     * 更新 PID 計算並返回控制輸出。
+     * 以時間來源計算時間步長，更新 PID 計算並返回控制輸出。
      *
      * @param processVariable 當前實際值。
      * @return 計算出的控制輸出（泛型型別 T），代表需要施加的調整量。
      */
     public T update(T processVariable) {
-        long now = System.nanoTime();
-        double deltaTime = (now - lastUpdateTime) / 1_000_000_000.0; // 將納秒轉換為秒
-        lastUpdateTime = now;
+        return core.update(input.set(processVariable), output).value;
+    }
 
-        if (setpoint == null) {
-            throw new IllegalStateException("Setpoint not set for PID controller.");
+    /**
+     * 以指定的時間步長更新 PID 計算並返回控制輸出，不讀取任何時鐘。
+     *
+     * @param processVariable 當前實際值。
+     * @param deltaTime 與上次更新的時間差 (秒)；不大於 0 時不更新積分與微分狀態。
+     * @return 計算出的控制輸出（泛型型別 T），代表需要施加的調整量。
+     */
+    public T update(T processVariable, double deltaTime) {
+        return core.update(input.set(processVariable), deltaTime, output).value;
+    }
+
+    // 不可變值的容器，PIDCore 的「就地」運算只替換其中的參照
+    static final class Ref<T> {
+        T value;
+
+        Ref<T> set(T value) {
+            this.value = value;
+            return this;
         }
+    }
+
+    private static final class ValueAlgebra<T extends PIDValue<T>> implements PIDCore.Algebra<Ref<T>> {
+        T identity; // 目標值的單位元，設定目標值前為 null
 
-        // 1. 計算誤差 (Error = Setpoint - ProcessVariable)
-        T error = setpoint.relative(processVariable);
+        @Override
+        public Ref<T> create() {
+            return new Ref<>();
+        }
 
-        // 初始化 lastError 和 integralSum (如果尚未初始化)
-        if (lastError == null) {
-            lastError = error.identity();
+        @Override
+        public void setZero(Ref<T> dst) {
+            dst.value = identity;
         }
-        if (integralSum == null) {
-            integralSum = error.identity();
+
+        @Override
+        public void set(Ref<T> dst, Ref<T> src) {
+            dst.value = src.value;
         }
 
-        // 2. 計算比例項 (P)
-        T proportional = error.gain(Kp);
-
-        // 3. 計算積分項 (I)
-        integralSum = integralSum.absolute(error.gain(deltaTime));
-
-        // 積分飽和限制 (Integral Windup Prevention)
-        // 如果積分項的 magnitude 超出限制，則將其縮放回限制範圍內
-        double currentIntegralMagnitude = integralSum.magnitude();
-        if (currentIntegralMagnitude > integralLimit) {
-            // 避免除以零，或者當 magnitude 極小時進行不必要的縮放
-            if (currentIntegralMagnitude > 1e-9) { // 小於這個值則視為接近零
-                double scaleFactor = integralLimit / currentIntegralMagnitude;
-                integralSum = integralSum.gain(scaleFactor);
-            } else {
-                integralSum = integralSum.identity(); // 如果非常接近零，直接設為 identity
-            }
+        @Override
+        public void setSub(Ref<T> dst, Ref<T> a, Ref<T> b) {
+            dst.value = a.value.relative(b.value);
         }
-        T integral = integralSum.gain(Ki);
 
-        // 4. 計算微分項 (D)
-        T derivativeError = error.relative(lastError); // 計算誤差的變化量
-        // 處理 deltaTime 過小的情況，避免除以零或數值不穩定
-        double safeDeltaTime = (deltaTime == 0) ? 1e-9 : deltaTime; // 使用一個非常小的值代替零
-        T derivative = derivativeError.gain(Kd / safeDeltaTime);
+        @Override
+        public void add(Ref<T> dst, Ref<T> v) {
+            dst.value = dst.value.absolute(v.value);
+        }
 
-        // 5. 計算總輸出
-        T output = proportional.absolute(integral).absolute(derivative);
+        @Override
+        public void addScaled(Ref<T> dst, Ref<T> v, double s) {
+            dst.value = dst.value.absolute(v.value.gain(s));
+        }
 
-        // 6. 更新 lastError
-        lastError = error;
+        @Override
+        public void scale(Ref<T> dst, double s) {
+            dst.value = dst.value.gain(s);
+        }
 
-        // 輸出限制：這裡不處理泛型輸出的最終限制。
-        // 實際的控制量限制應在 PID 控制器外部，將 T 轉換為實際的物理指令時進行。
-        return output;
+        @Override
+        public double norm(Ref<T> v) {
+            return v.value.magnitude();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,202 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+/**
+ * PID 演算法的唯一實作：量測值微分與一階低通濾波、積分限制、輸出飽和、反算抗飽和、前饋。
+ * 狀態以 Algebra 提供的就地運算更新，PIDController (不可變的 PIDValue) 與
+ * Vec3PIDController (可變的 Vec3) 都委派到這裡，調整或修正只需改一處。
+ * @param <S> 狀態容器的型別。
+ */
+final class PIDCore<S> {
+    /**
+     * 狀態容器上的就地運算。以李代數來看，sub 即 relative、add 即 absolute、scale 即 gain。
+     */
+    interface Algebra<S> {
+        S create();
+
+        void setZero(S dst);
+
+        void set(S dst, S src);
+
+        // dst = a - b
+        void setSub(S dst, S a, S b);
+
+        // dst = dst + v
+        void add(S dst, S v);
+
+        // dst = dst + v * s
+        void addScaled(S dst, S v, double s);
+
+        // dst = dst * s
+        void scale(S dst, double s);
+
+        double norm(S v);
+    }
+
+    private final Algebra<S> algebra;
+
+    private double Kp; // 比例增益
+    private double Ki; // 積分增益
+    private double Kd; // 微分增益
+
+    private final S setpoint; // 目標值
+    private final S feedForward; // 前饋量，直接加在輸出上
+    private boolean hasSetpoint;
+    private boolean hasFeedForward;
+
+    private final S lastMeasurement; // 上一次的量測值
+    private final S filteredDerivative; // 濾波後的量測變化率
+    private final S integralSum; // 誤差的累積總和
+    private boolean hasLastMeasurement;
+    private boolean hasFilteredDerivative;
+
+    private double integralLimit; // 積分項 magnitude 的上限
+    private double outputLimit = Double.MAX_VALUE; // 輸出 magnitude 的上限
+    private double derivativeTimeConstant = 0.0; // 微分低通濾波的時間常數 (秒)，0 表示不濾波
+    private double backCalculationGain = 1.0; // 反算抗飽和增益
+
+    private PIDController.Clock clock = PIDController.SYSTEM_CLOCK;
+    private long lastUpdateTime; // 上次更新時間
+
+    // 更新時使用的暫存狀態
+    private final S error;
+    private final S rawDerivative;
+    private final S saturated;
+    private final S excess;
+
+    PIDCore(Algebra<S> algebra, double Kp, double Ki, double Kd, double integralLimit) {
+        this.algebra = algebra;
+        this.Kp = Kp;
+        this.Ki = Ki;
+        this.Kd = Kd;
+        this.integralLimit = integralLimit;
+        setpoint = algebra.create();
+        feedForward = algebra.create();
+        lastMeasurement = algebra.create();
+        filteredDerivative = algebra.create();
+        integralSum = algebra.create();
+        error = algebra.create();
+        rawDerivative = algebra.create();
+        saturated = algebra.create();
+        excess = algebra.create();
+        lastUpdateTime = clock.nanoTime();
+    }
+
+    void setClock(PIDController.Clock clock) {
+        this.clock = clock;
+        this.lastUpdateTime = clock.nanoTime();
+    }
+
+    void setOutputLimit(double outputLimit) {
+        this.outputLimit = outputLimit;
+    }
+
+    void setDerivativeFilter(double timeConstant) {
+        this.derivativeTimeConstant = Math.max(0.0, timeConstant);
+    }
+
+    void setBackCalculationGain(double backCalculationGain) {
+        this.backCalculationGain = backCalculationGain;
+    }
+
+    // 複製數值，null 表示不使用
+    void setFeedForward(S feedForward) {
+        hasFeedForward = feedForward != null;
+        if (hasFeedForward) algebra.set(this.feedForward, feedForward);
+    }
+
+    // 複製數值，並重置狀態
+    void setSetpoint(S setpoint) {
+        algebra.set(this.setpoint, setpoint);
+        hasSetpoint = true;
+        reset();
+    }
+
+    void reset() {
+        algebra.setZero(integralSum);
+        hasLastMeasurement = false;
+        hasFilteredDerivative = false;
+        lastUpdateTime = clock.nanoTime();
+    }
+
+    // 以時間來源計算時間步長並更新
+    S update(S processVariable, S output) {
+        long now = clock.nanoTime();
+        double deltaTime = (now - lastUpdateTime) / 1_000_000_000.0; // 將納秒轉換為秒
+        lastUpdateTime = now;
+        return update(processVariable, deltaTime, output);
+    }
+
+    /**
+     * @param processVariable 當前實際值 (不會被修改)。
+     * @param deltaTime 與上次更新的時間差 (秒)；不大於 0 時不更新積分與微分狀態。
+     * @param output 輸出的控制量。
+     * @return output。
+     */
+    S update(S processVariable, double deltaTime, S output) {
+        if (!hasSetpoint) {
+            throw new IllegalStateException("Setpoint not set for PID controller.");
+        }
+
+        // 1. 誤差 = 目標值 - 量測值
+        algebra.setSub(error, setpoint, processVariable);
+
+        // 2. 積分：累積後限制 magnitude
+        if (deltaTime > 0) {
+            algebra.addScaled(integralSum, error, deltaTime);
+            limitIntegral();
+        }
+
+        // 3. 微分：對量測值微分，避免目標值變動造成的突波，並以一階低通濾波
+        if (deltaTime > 0 && hasLastMeasurement) {
+            // lastMeasurement - processVariable，即 -d(PV)/dt，在目標值不變時等於 d(Error)/dt
+            algebra.setSub(rawDerivative, lastMeasurement, processVariable);
+            algebra.scale(rawDerivative, 1.0 / deltaTime);
+            if (!hasFilteredDerivative) {
+                algebra.set(filteredDerivative, rawDerivative);
+                hasFilteredDerivative = true;
+            } else {
+                double alpha = deltaTime / (derivativeTimeConstant + deltaTime);
+                algebra.setSub(rawDerivative, rawDerivative, filteredDerivative);
+                algebra.addScaled(filteredDerivative, rawDerivative, alpha);
+            }
+        }
+        if (deltaTime > 0 || !hasLastMeasurement) {
+            algebra.set(lastMeasurement, processVariable);
+            hasLastMeasurement = true;
+        }
+
+        // 4. 總輸出 = P + I + D (+ 前饋)
+        algebra.set(output, error);
+        algebra.scale(output, Kp);
+        algebra.addScaled(output, integralSum, Ki);
+        if (hasFilteredDerivative) algebra.addScaled(output, filteredDerivative, Kd);
+        if (hasFeedForward) algebra.add(output, feedForward);
+
+        // 5. 輸出飽和，並以反算修正積分：integral += (Kb / Ki) * (saturated - output) * dt
+        double outputMagnitude = algebra.norm(output);
+        if (outputMagnitude > outputLimit) {
+            algebra.set(saturated, output);
+            algebra.scale(saturated, outputLimit / outputMagnitude);
+            if (Ki != 0 && backCalculationGain != 0 && deltaTime > 0) {
+                algebra.setSub(excess, saturated, output);
+                algebra.addScaled(integralSum, excess, backCalculationGain / Ki * deltaTime);
+                limitIntegral();
+            }
+            algebra.set(output, saturated);
+        }
+
+        return output;
+    }
+
+    // 積分飽和限制：magnitude 超出上限時縮放回上限，極小時直接歸零
+    private void limitIntegral() {
+        double currentIntegralMagnitude = algebra.norm(integralSum);
+        if (currentIntegralMagnitude > integralLimit) {
+            if (currentIntegralMagnitude > 1e-9) {
+                algebra.scale(integralSum, integralLimit / currentIntegralMagnitude);
+            } else {
+                algebra.setZero(integralSum);
+            }
+        }
+    }
+}
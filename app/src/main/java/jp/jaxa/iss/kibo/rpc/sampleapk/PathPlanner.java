@@ -0,0 +1,315 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import gov.nasa.arc.astrobee.Result;
+import gov.nasa.arc.astrobee.types.Point;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 路徑規劃：以航點與區域接近點建立可視圖，兩點間的直線段必須完全位於
+ * keep-in 區域 (KIZ) 的聯集內、且不穿過任何 keep-out 區域 (KOZ) 才視為相連。
+ * build() 時以 Floyd–Warshall 預先計算所有節點之間的最短路徑，
+ * 執行時只需查表並連接起點、終點，即可輸出多段式路徑給 Frame.moveTo 使用。
+ */
+public class PathPlanner {
+    private static final String TAG = "PathPlanner";
+    private static final double SAMPLE_STEP = 0.02; // 線段取樣間距 (公尺)
+    private static final long MAX_START_AGE_NANOS = 200_000_000L; // 起點可用的背景樣本最大年齡
+
+    private final List<Box> keepIn;
+    private final List<Box> keepOut;
+    private final double margin; // 與區域邊界保持的距離 (公尺)
+    private double maxSpeed = 0.2; // 軌跡的速度上限 (公尺/秒)，Astrobee 標稱值
+    private double maxAcceleration = 0.0175; // 軌跡的加速度上限 (公尺/秒²)，Astrobee 標稱值
+
+    private final Map<String, Integer> index = new LinkedHashMap<>();
+    private final List<Vec3> nodes = new ArrayList<>();
+    private double[][] distance;
+    private int[][] next;
+    private MotionTelemetry telemetry; // 非 null 時記錄 moveTo 的每一段
+    private KinematicsSampler sampler; // 非 null 時起點優先讀取背景取樣，不同步呼叫 API
+
+    /**
+     * @param keepIn keep-in 區域，線段必須位於其聯集內。
+     * @param keepOut keep-out 區域，線段不可穿過。
+     * @param margin 安全距離：keep-in 向內縮、keep-out 向外擴張的量。
+     */
+    public PathPlanner(List<Box> keepIn, List<Box> keepOut, double margin) {
+        this.keepIn = new ArrayList<>();
+        for (Box box: keepIn) this.keepIn.add(box.inflate(-margin));
+        this.keepOut = new ArrayList<>();
+        for (Box box: keepOut) this.keepOut.add(box.inflate(margin));
+        this.margin = margin;
+    }
+
+    public PathPlanner setLimits(double maxSpeed, double maxAcceleration) {
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+        return this;
+    }
+
+    // 設定移動遙測，只有沿規劃路徑的移動會納入成本模型擬合
+    public PathPlanner setTelemetry(MotionTelemetry telemetry) {
+        this.telemetry = telemetry;
+        return this;
+    }
+
+    public PathPlanner setSampler(KinematicsSampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    public PathPlanner addNode(String name, Point position) {
+        if (index.containsKey(name)) {
+            nodes.get(index.get(name)).set(position);
+        } else {
+            index.put(name, nodes.size());
+            nodes.add(new Vec3(position));
+        }
+        distance = null; // 需要重新 build
+        return this;
+    }
+
+    /**
+     * 建立可視圖並計算所有節點對的最短路徑 (Floyd–Warshall)，O(n³)，只在啟動時呼叫一次。
+     */
+    public PathPlanner build() {
+        long startTime = System.nanoTime();
+        int n = nodes.size();
+        distance = new double[n][n];
+        next = new int[n][n];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j) {
+                    distance[i][j] = 0.0;
+                    next[i][j] = j;
+                } else if (j < i) {
+                    // 無向圖：沿用對稱的結果
+                    distance[i][j] = distance[j][i];
+                    next[i][j] = next[j][i] < 0 ? -1 : j;
+                } else if (isFree(nodes.get(i), nodes.get(j))) {
+                    distance[i][j] = nodes.get(i).distance(nodes.get(j));
+                    next[i][j] = j;
+                    edges++;
+                } else {
+                    distance[i][j] = Double.POSITIVE_INFINITY;
+                    next[i][j] = -1;
+                }
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                if (distance[i][k] == Double.POSITIVE_INFINITY) continue;
+                for (int j = 0; j < n; j++) {
+                    double d = distance[i][k] + distance[k][j];
+                    if (d < distance[i][j]) {
+                        distance[i][j] = d;
+                        next[i][j] = next[i][k];
+                    }
+                }
+            }
+        }
+        Log.i(TAG, "built " + n + " nodes, " + edges + " edges in " + (System.nanoTime() - startTime) / 1_000_000L + " ms");
+        return this;
+    }
+
+    /**
+     * 規劃從 from 到 target 的路徑。中間航點沿用 target 的姿態，讓機器人在第一段就轉到最終朝向。
+     * 若找不到無碰撞的路徑 (例如起點不在 keep-in 內)，退回直接移動到 target。
+     * @param from 起點位置。
+     * @param target 目標座標系。
+     * @return 依序移動的座標系清單，最後一個必為 target。
+     */
+    public List<Frame> route(Point from, Frame target) {
+        if (distance == null) build();
+        Vec3 start = new Vec3(from);
+        Vec3 goal = new Vec3(target.getPosition());
+        if (isFree(start, goal)) {
+            return Collections.singletonList(target);
+        }
+
+        // 起點與終點各自連到可視節點，再查表取最短組合：O(n²)
+        int n = nodes.size();
+        double[] fromStart = new double[n];
+        double[] toGoal = new double[n];
+        for (int i = 0; i < n; i++) {
+            fromStart[i] = isFree(start, nodes.get(i)) ? start.distance(nodes.get(i)) : Double.POSITIVE_INFINITY;
+            toGoal[i] = isFree(nodes.get(i), goal) ? nodes.get(i).distance(goal) : Double.POSITIVE_INFINITY;
+        }
+        double best = Double.POSITIVE_INFINITY;
+        int entry = -1, exit = -1;
+        for (int i = 0; i < n; i++) {
+            if (fromStart[i] == Double.POSITIVE_INFINITY) continue;
+            for (int j = 0; j < n; j++) {
+                double d = fromStart[i] + distance[i][j] + toGoal[j];
+                if (d < best) {
+                    best = d;
+                    entry = i;
+                    exit = j;
+                }
+            }
+        }
+        if (entry < 0) {
+            Log.w(TAG, "no collision-free route from " + start + " to " + goal + ", moving directly");
+            return Collections.singletonList(target);
+        }
+
+        List<Frame> route = new ArrayList<>();
+        for (int i = entry; ; i = next[i][exit]) {
+            // 起點就在航點上時不需要再移動一次
+            if (i != entry || start.distance(nodes.get(i)) > SAMPLE_STEP) {
+                route.add(new Frame(nodes.get(i).toVector(), target.getOrientation()));
+            }
+            if (i == exit) break;
+        }
+        route.add(target);
+        return route;
+    }
+
+    /**
+     * moveTo 實際執行的路徑：start → 規劃航點 → target，去掉可跳過的航點並分散旋轉。
+     * 成本模型以同一條路徑估計移動時間。
+     */
+    public Trajectory trajectory(Frame start, Frame target) {
+        List<Frame> knots = new ArrayList<>();
+        knots.add(start);
+        knots.addAll(route(start.getPosition(), target));
+        return new Trajectory(knots, maxSpeed, maxAcceleration).shortcut(this).spreadRotation();
+    }
+
+    /**
+     * 從目前位置沿規劃路徑移動到 target，任一段失敗即停止。
+     * 路徑先去掉可跳過的航點，再把旋轉分散到各段，盡量減少阻塞指令與原地旋轉。
+     * @param api API 計時代理。
+     * @param target 目標座標系。
+     * @return 最後一段移動的結果。
+     */
+    @SuppressLint("DefaultLocale")
+    public Result moveTo(ProfiledApi api, Frame target) {
+        Trajectory trajectory = trajectory(start(api), target);
+        Log.i(TAG, "route to " + target.getPosition() + ": " + trajectory);
+        return trajectory.execute(api, telemetry, new Trajectory.Listener() {
+            @Override
+            public void onProgress(int leg, int legs, Frame reached, double expectedSeconds, double elapsedSeconds) {
+                Log.i(TAG, String.format("leg %d/%d reached %s, expected %.1f s, elapsed %.1f s", leg, legs, reached.getPosition(), expectedSeconds, elapsedSeconds));
+            }
+        });
+    }
+
+    // 目前位姿：背景取樣器有足夠新的樣本時直接使用，否則同步呼叫 API
+    private Frame start(ProfiledApi api) {
+        KinematicsSampler.Sample sample = new KinematicsSampler.Sample();
+        if (sampler != null && sampler.latest(sample) && System.nanoTime() - sample.timestampNanos <= MAX_START_AGE_NANOS) {
+            return sample.toFrame();
+        }
+        return new Frame(api);
+    }
+
+    /**
+     * 從 from 依序經過 route 的總平移距離。
+     */
+    public static double length(Point from, List<Frame> route) {
+        double length = 0.0;
+        Vec3 p = new Vec3(from);
+        for (Frame frame: route) {
+            length += p.distance(frame.getPosition());
+            p.set(frame.getPosition());
+        }
+        return length;
+    }
+
+    /**
+     * 預先計算的節點間最短距離，無法到達時為無限大。
+     */
+    public double distance(String from, String to) {
+        if (distance == null) build();
+        return distance[index.get(from)][index.get(to)];
+    }
+
+    // 線段 a→b 是否完全位於 keep-in 聯集內且不與任何 keep-out 相交
+    boolean isFree(Vec3 a, Vec3 b) {
+        for (Box box: keepOut) {
+            if (box.intersectsSegment(a, b)) return false;
+        }
+        if (keepIn.isEmpty()) return true;
+        int steps = Math.max(1, (int) Math.ceil(a.distance(b) / SAMPLE_STEP));
+        Vec3 p = new Vec3();
+        for (int s = 0; s <= steps; s++) {
+            p.setLerp(a, b, (double) s / steps);
+            boolean inside = false;
+            for (Box box: keepIn) {
+                if (box.contains(p)) {
+                    inside = true;
+                    break;
+                }
+            }
+            if (!inside) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PathPlanner{ nodes = " + index.keySet() + ", keepIn = " + keepIn.size() + ", keepOut = " + keepOut.size() + ", margin = " + margin + " }";
+    }
+
+    /**
+     * 軸對齊的長方體區域。
+     */
+    public static class Box {
+        private final Vec3 min;
+        private final Vec3 max;
+
+        public Box(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            this.min = new Vec3(Math.min(minX, maxX), Math.min(minY, maxY), Math.min(minZ, maxZ));
+            this.max = new Vec3(Math.max(minX, maxX), Math.max(minY, maxY), Math.max(minZ, maxZ));
+        }
+
+        // 向外擴張 amount (負數為向內縮)
+        public Box inflate(double amount) {
+            return new Box(min.x - amount, min.y - amount, min.z - amount, max.x + amount, max.y + amount, max.z + amount);
+        }
+
+        public boolean contains(Vec3 p) {
+            return p.x >= min.x && p.x <= max.x
+                && p.y >= min.y && p.y <= max.y
+                && p.z >= min.z && p.z <= max.z;
+        }
+
+        /**
+         * 線段 a→b 是否與此區域相交 (slab 法)。
+         */
+        public boolean intersectsSegment(Vec3 a, Vec3 b) {
+            double t0 = 0.0, t1 = 1.0;
+            double[] origin = {a.x, a.y, a.z};
+            double[] delta = {b.x - a.x, b.y - a.y, b.z - a.z};
+            double[] lo = {min.x, min.y, min.z};
+            double[] hi = {max.x, max.y, max.z};
+            for (int k = 0; k < 3; k++) {
+                if (delta[k] == 0) {
+                    if (origin[k] < lo[k] || origin[k] > hi[k]) return false;
+                    continue;
+                }
+                double ta = (lo[k] - origin[k]) / delta[k];
+                double tb = (hi[k] - origin[k]) / delta[k];
+                t0 = Math.max(t0, Math.min(ta, tb));
+                t1 = Math.min(t1, Math.max(ta, tb));
+                if (t0 > t1) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Box{ min = " + min + ", max = " + max + " }";
+        }
+    }
+}
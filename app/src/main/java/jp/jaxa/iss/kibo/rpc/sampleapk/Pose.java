@@ -0,0 +1,270 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+
+/**
+ * 可變的 SE(3) 剛體位姿 (平移 + 旋轉)，以雙精度計算，運算就地修改 this 並返回 this。
+ * 與 Frame 的逐分量加法不同，合成時平移會先經過旋轉：T_a * T_b = (R_a R_b, t_a + R_a t_b)。
+ */
+public final class Pose {
+    private static final double SMALL_ANGLE = 1e-8;
+
+    private final Vec3 translation = new Vec3();
+    private final Quat rotation = new Quat();
+
+    // 運算用暫存，避免配置新物件
+    private final Vec3 tmp = new Vec3();
+    private final Quat tmpRotation = new Quat();
+
+    public Pose() {
+    }
+
+    public Pose(Frame frame) {
+        set(frame);
+    }
+
+    public Vec3 getTranslation() {
+        return translation;
+    }
+
+    public Quat getRotation() {
+        return rotation;
+    }
+
+    // --- 設定 ---
+
+    public Pose set(Pose p) {
+        translation.set(p.translation);
+        rotation.set(p.rotation);
+        return this;
+    }
+
+    public Pose set(Frame frame) {
+        translation.set(frame.getPosition());
+        rotation.set(frame.getOrientation()).normalize();
+        return this;
+    }
+
+    public Pose setIdentity() {
+        translation.setZero();
+        rotation.setIdentity();
+        return this;
+    }
+
+    // --- 群運算 ---
+
+    /**
+     * this = a * b，a、b 可以是 this。
+     */
+    public Pose setCompose(Pose a, Pose b) {
+        a.rotation.rotate(b.translation, tmp);
+        double tx = a.translation.x + tmp.x, ty = a.translation.y + tmp.y, tz = a.translation.z + tmp.z;
+        rotation.setMul(a.rotation, b.rotation).normalize();
+        translation.set(tx, ty, tz);
+        return this;
+    }
+
+    // this = this * b
+    public Pose compose(Pose b) {
+        return setCompose(this, b);
+    }
+
+    /**
+     * this = this^-1 = (R^T, -R^T t)。
+     */
+    public Pose inverse() {
+        rotation.conjugate();
+        rotation.rotate(translation, translation).negate();
+        return this;
+    }
+
+    /**
+     * this = a^-1 * b，即 b 在 a 座標系中的相對位姿。a、b 可以是 this。
+     */
+    public Pose setBetween(Pose a, Pose b) {
+        // R = Ra^T Rb, t = Ra^T (tb - ta)
+        tmp.setSub(b.translation, a.translation);
+        tmpRotation.set(a.rotation).conjugate();
+        tmpRotation.rotate(tmp, tmp);
+        rotation.setMul(tmpRotation, b.rotation).normalize();
+        translation.set(tmp);
+        return this;
+    }
+
+    // --- 點轉換 ---
+
+    /**
+     * out = R p + t (例如相機座標系 → 世界座標系)。p、out 可以是同一物件。
+     */
+    public Vec3 transform(Vec3 p, Vec3 out) {
+        return rotation.rotate(p, out).add(translation);
+    }
+
+    /**
+     * out = R^T (p - t) (例如世界座標系 → 相機座標系)。p、out 可以是同一物件。
+     */
+    public Vec3 inverseTransform(Vec3 p, Vec3 out) {
+        out.setSub(p, translation);
+        return tmpRotation.set(rotation).conjugate().rotate(out, out);
+    }
+
+    /**
+     * 批次轉換：dst[i] = R src[i] + t。dst 會被清空後填入，可與 src 相同。
+     */
+    public Vec3Buffer transformAll(Vec3Buffer src, Vec3Buffer dst) {
+        return transformAll(src, dst, false);
+    }
+
+    /**
+     * 批次反轉換：dst[i] = R^T (src[i] - t)。dst 會被清空後填入，可與 src 相同。
+     */
+    public Vec3Buffer inverseTransformAll(Vec3Buffer src, Vec3Buffer dst) {
+        return transformAll(src, dst, true);
+    }
+
+    private Vec3Buffer transformAll(Vec3Buffer src, Vec3Buffer dst, boolean inverse) {
+        // 將旋轉展開成矩陣，每個點只需 9 次乘法
+        double x = rotation.getX(), y = rotation.getY(), z = rotation.getZ(), w = rotation.getW();
+        double r00 = 1 - 2 * (y * y + z * z), r01 = 2 * (x * y - w * z), r02 = 2 * (x * z + w * y);
+        double r10 = 2 * (x * y + w * z), r11 = 1 - 2 * (x * x + z * z), r12 = 2 * (y * z - w * x);
+        double r20 = 2 * (x * z - w * y), r21 = 2 * (y * z + w * x), r22 = 1 - 2 * (x * x + y * y);
+        double tx = translation.x, ty = translation.y, tz = translation.z;
+
+        int n = src.size();
+        double[] in = src.array();
+        if (dst != src) {
+            dst.clear();
+            for (int i = 0; i < n; i++) dst.add(0, 0, 0);
+        }
+        double[] out = dst.array();
+        for (int i = 0; i < 3 * n; i += 3) {
+            double px = in[i], py = in[i + 1], pz = in[i + 2];
+            if (inverse) {
+                px -= tx;
+                py -= ty;
+                pz -= tz;
+                out[i] = r00 * px + r10 * py + r20 * pz;
+                out[i + 1] = r01 * px + r11 * py + r21 * pz;
+                out[i + 2] = r02 * px + r12 * py + r22 * pz;
+            } else {
+                out[i] = r00 * px + r01 * py + r02 * pz + tx;
+                out[i + 1] = r10 * px + r11 * py + r12 * pz + ty;
+                out[i + 2] = r20 * px + r21 * py + r22 * pz + tz;
+            }
+        }
+        return dst;
+    }
+
+    // --- 李代數 ---
+
+    /**
+     * 對數映射：將位姿轉為 se(3) 切向量 (rho, phi)，phi 為旋轉向量，rho = V^-1 t。
+     * 兩個位姿之間的誤差可用 new Pose().setBetween(a, b).log(rho, phi) 取得。
+     */
+    public void log(Vec3 rho, Vec3 phi) {
+        rotation.toRotationVector(phi);
+        double theta = phi.norm();
+        // V^-1 = I - 1/2 [φ]x + c [φ]x^2
+        double c;
+        if (theta < SMALL_ANGLE) {
+            c = 1.0 / 12.0;
+        } else {
+            c = (1.0 - theta * Math.sin(theta) / (2.0 * (1.0 - Math.cos(theta)))) / (theta * theta);
+        }
+        applyV(phi, translation, rho, -0.5, c);
+    }
+
+    /**
+     * 指數映射：由 se(3) 切向量 (rho, phi) 設定位姿，t = V rho。
+     */
+    public Pose setExp(Vec3 rho, Vec3 phi) {
+        double theta = phi.norm();
+        // V = I + b [φ]x + c [φ]x^2
+        double b, c;
+        if (theta < SMALL_ANGLE) {
+            b = 0.5;
+            c = 1.0 / 6.0;
+        } else {
+            double theta2 = theta * theta;
+            b = (1.0 - Math.cos(theta)) / theta2;
+            c = (theta - Math.sin(theta)) / (theta2 * theta);
+        }
+        rotation.setRotationVector(phi);
+        applyV(phi, rho, translation, b, c);
+        return this;
+    }
+
+    // out = v + b (φ × v) + c (φ × (φ × v))，out 不可與 phi 相同
+    private void applyV(Vec3 phi, Vec3 v, Vec3 out, double b, double c) {
+        double ax = phi.y * v.z - phi.z * v.y;
+        double ay = phi.z * v.x - phi.x * v.z;
+        double az = phi.x * v.y - phi.y * v.x;
+        double bx = phi.y * az - phi.z * ay;
+        double by = phi.z * ax - phi.x * az;
+        double bz = phi.x * ay - phi.y * ax;
+        out.set(v.x + b * ax + c * bx, v.y + b * ay + c * by, v.z + b * az + c * bz);
+    }
+
+    // --- 與 Frame 轉換 ---
+
+    public Frame toFrame() {
+        return new Frame(this);
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return "Pose{ translation = " + translation + ", rotation = " + rotation + " }";
+    }
+
+    /**
+     * 位姿平均：平移取算術平均，旋轉將每個四元數對齊到第一個樣本的半球後加總再正規化
+     * (四元數的弦距離平均，對彼此接近的姿態是良好的近似)。
+     */
+    public static final class Mean {
+        private final Vec3 translationSum = new Vec3();
+        private final Quat rotationSum = new Quat(0, 0, 0, 0);
+        private final Quat reference = new Quat();
+        private final Quat sample = new Quat();
+        private int count;
+
+        public Mean add(Frame frame) {
+            sample.set(frame.getOrientation()).normalize();
+            translationSum.add(frame.getPosition());
+            return addRotation();
+        }
+
+        public Mean add(Pose pose) {
+            sample.set(pose.rotation).normalize();
+            translationSum.add(pose.translation);
+            return addRotation();
+        }
+
+        private Mean addRotation() {
+            if (count == 0) reference.set(sample);
+            if (sample.dot(reference) < 0) sample.negate();
+            rotationSum.set(
+                rotationSum.getX() + sample.getX(),
+                rotationSum.getY() + sample.getY(),
+                rotationSum.getZ() + sample.getZ(),
+                rotationSum.getW() + sample.getW()
+            );
+            count++;
+            return this;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /**
+         * 將平均結果寫入 out，沒有樣本時為單位位姿。
+         */
+        public Pose get(Pose out) {
+            if (count == 0) return out.setIdentity();
+            out.translation.set(translationSum).scale(1.0 / count);
+            out.rotation.set(rotationSum).normalize();
+            return out;
+        }
+    }
+}
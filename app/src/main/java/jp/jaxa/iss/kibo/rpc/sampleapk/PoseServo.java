@@ -0,0 +1,154 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import gov.nasa.arc.astrobee.Kinematics;
+
+/**
+ * 閉迴路位姿伺服：以固定頻率取樣運動學資料，透過位置與姿態 PID 計算修正量，
+ * 再以 Frame.relativeMoveTo 下達修正，直到滿足靜定條件或逾時。
+ */
+public class PoseServo {
+    private static final String TAG = "PoseServo";
+
+    private final Vec3PIDController positionPID;
+    private final PIDController<Quater> orientationPID;
+
+    private long periodMillis = 200; // 取樣週期
+    private double positionTolerance = 0.01; // 公尺
+    private double orientationTolerance = Math.toRadians(1.0); // 弧度
+    private double linearSpeedTolerance = 0.01; // 公尺/秒
+    private int settleSamples = 2; // 連續滿足條件的取樣數
+    private long timeoutMillis = 10_000; // 伺服逾時
+    private double maxStep = 0.3; // 單次修正的最大位移 (公尺)
+    private KinematicsSampler sampler; // 非 null 時優先讀取背景取樣，不同步呼叫 API
+
+    // 迴圈內重複使用的暫存向量，避免每次取樣配置新物件
+    private final Vec3 scratch = new Vec3();
+    private final Vec3 step = new Vec3();
+    private final Quat targetOrientation = new Quat();
+    private final Quat errorOrientation = new Quat();
+    private final KinematicsSampler.Sample sample = new KinematicsSampler.Sample();
+
+    public PoseServo(Vec3PIDController positionPID, PIDController<Quater> orientationPID) {
+        this.positionPID = positionPID;
+        this.orientationPID = orientationPID;
+    }
+
+    public PoseServo setPeriod(long periodMillis) {
+        this.periodMillis = periodMillis;
+        return this;
+    }
+
+    /**
+     * 設定靜定條件：位置、姿態誤差與線速度皆在容許值內，並連續維持 settleSamples 次取樣。
+     */
+    public PoseServo setSettle(double positionTolerance, double orientationTolerance, double linearSpeedTolerance, int settleSamples) {
+        this.positionTolerance = positionTolerance;
+        this.orientationTolerance = orientationTolerance;
+        this.linearSpeedTolerance = linearSpeedTolerance;
+        this.settleSamples = Math.max(1, settleSamples);
+        return this;
+    }
+
+    public PoseServo setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public PoseServo setMaxStep(double maxStep) {
+        this.maxStep = maxStep;
+        return this;
+    }
+
+    public PoseServo setSampler(KinematicsSampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * 接近區域：先以一次絕對移動抵達附近，再以閉迴路修正到靜定。
+     * @param api API 計時代理。
+     * @param target 目標座標系。
+     * @return 伺服報告，getResult() 為最後量測到的機器人座標系。
+     */
+    public AnchorReport approach(ProfiledApi api, Frame target) {
+        target.moveTo(api, false);
+        return hold(api, target);
+    }
+
+    /**
+     * 原地保持：不做粗略移動，直接以閉迴路修正漂移，靜定後即返回。
+     * 適用於在太空人前方等待時維持位姿。
+     * @param api API 計時代理。
+     * @param target 目標座標系。
+     * @return 伺服報告，getResult() 為最後量測到的機器人座標系。
+     */
+    public AnchorReport hold(ProfiledApi api, Frame target) {
+        // 目標姿態對齊目前姿態的半球，姿態 PID 才不會繞遠路
+        target = target.shortestArc(new Frame(api));
+        positionPID.setSetpoint(target.getPosition());
+        orientationPID.setSetpoint(target.getOrientation());
+        targetOrientation.set(target.getOrientation());
+
+        long startTime = System.nanoTime();
+        AnchorReport report = new AnchorReport();
+        Frame current = null;
+        boolean settled = false;
+        int settledCount = 0;
+
+        for (int i = 1; ; i++) {
+            long tickStart = System.nanoTime();
+
+            // 1. 取樣：背景取樣器有不超過一個週期的新樣本時直接使用，否則同步呼叫 API
+            double linearSpeed;
+            if (sampler != null && sampler.latest(sample) && tickStart - sample.timestampNanos <= periodMillis * 1_000_000L) {
+                current = sample.toFrame();
+                linearSpeed = sample.linearSpeed();
+            } else {
+                Kinematics kinematics = api.getRobotKinematics();
+                current = new Frame(kinematics);
+                linearSpeed = scratch.set(kinematics.getLinearVelocity()).norm();
+            }
+            double positionError = scratch.set(target.getPosition()).sub(current.getPosition()).norm();
+            double orientationError = errorOrientation.set(current.getOrientation()).setMulConjugate(targetOrientation, errorOrientation).angle();
+            report.add(new AnchorReport.Sample(i, positionError, orientationError, Double.NaN, tickStart - startTime));
+
+            // 2. 靜定判斷
+            boolean within = positionError <= positionTolerance && orientationError <= orientationTolerance;
+            settledCount = (within && linearSpeed <= linearSpeedTolerance) ? settledCount + 1 : 0;
+            if (settledCount >= settleSamples) {
+                settled = true;
+                break;
+            }
+            if ((tickStart - startTime) / 1_000_000L >= timeoutMillis) {
+                Log.w(TAG, "timeout after " + i + " samples: " + report.last());
+                break;
+            }
+
+            // 3. PID 修正：位置為世界座標系的相對位移，姿態為左乘在目前姿態上的修正量
+            positionPID.update(current.getPosition(), step);
+            Quater correction = orientationPID.update(current.getOrientation());
+            if (!within) {
+                step.clampNorm(maxStep);
+                Quater command = correction.absolute(current.getOrientation()).normalize();
+                new Frame(step.toVector(), command).relativeMoveTo(api, false);
+            }
+
+            // 4. 維持固定取樣週期
+            long remaining = periodMillis - (System.nanoTime() - tickStart) / 1_000_000L;
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        report.finish(current, settled, System.nanoTime() - startTime);
+        Log.i(TAG, "target: " + target + ", " + report);
+        return report;
+    }
+}
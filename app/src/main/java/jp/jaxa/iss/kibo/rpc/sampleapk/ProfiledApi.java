@@ -0,0 +1,101 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import org.opencv.core.Mat;
+
+import gov.nasa.arc.astrobee.Kinematics;
+import gov.nasa.arc.astrobee.Result;
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Quaternion;
+import jp.jaxa.iss.kibo.rpc.api.KiboRpcApi;
+
+/**
+ * KiboRpcApi 的計時代理：KiboRpcApi 是 final 類別無法繼承，因此以委派包裝任務用到的方法，
+ * 每次呼叫記錄為 "api.方法名稱" 區段。所有元件都透過此類別呼叫 API，不在呼叫處各自計時。
+ */
+@SuppressWarnings("try")
+public final class ProfiledApi {
+    private final KiboRpcApi api;
+
+    public ProfiledApi(KiboRpcApi api) {
+        this.api = api;
+    }
+
+    public boolean startMission() {
+        try (Profiler.Span span = Profiler.start("api.startMission")) {
+            return api.startMission();
+        }
+    }
+
+    public Kinematics getRobotKinematics() {
+        try (Profiler.Span span = Profiler.start("api.getRobotKinematics")) {
+            return api.getRobotKinematics();
+        }
+    }
+
+    // 背景取樣專用：記錄為 "sampler.getRobotKinematics"，不混入任務本身呼叫的 API 統計
+    public Kinematics sampleRobotKinematics() {
+        try (Profiler.Span span = Profiler.start("sampler.getRobotKinematics")) {
+            return api.getRobotKinematics();
+        }
+    }
+
+    public Result moveTo(Point point, Quaternion quaternion, boolean printRobotPosition) {
+        try (Profiler.Span span = Profiler.start("api.moveTo")) {
+            return api.moveTo(point, quaternion, printRobotPosition);
+        }
+    }
+
+    public Result relativeMoveTo(Point point, Quaternion quaternion, boolean printRobotPosition) {
+        try (Profiler.Span span = Profiler.start("api.relativeMoveTo")) {
+            return api.relativeMoveTo(point, quaternion, printRobotPosition);
+        }
+    }
+
+    public Mat getMatNavCam() {
+        try (Profiler.Span span = Profiler.start("api.getMatNavCam")) {
+            return api.getMatNavCam();
+        }
+    }
+
+    public double[][] getNavCamIntrinsics() {
+        try (Profiler.Span span = Profiler.start("api.getNavCamIntrinsics")) {
+            return api.getNavCamIntrinsics();
+        }
+    }
+
+    public Result flashlightControlFront(float brightness) {
+        try (Profiler.Span span = Profiler.start("api.flashlightControlFront")) {
+            return api.flashlightControlFront(brightness);
+        }
+    }
+
+    public void saveMatImage(Mat image, String imageName) {
+        try (Profiler.Span span = Profiler.start("api.saveMatImage")) {
+            api.saveMatImage(image, imageName);
+        }
+    }
+
+    public void setAreaInfo(int areaId, String itemName, int number) {
+        try (Profiler.Span span = Profiler.start("api.setAreaInfo")) {
+            api.setAreaInfo(areaId, itemName, number);
+        }
+    }
+
+    public boolean reportRoundingCompletion() {
+        try (Profiler.Span span = Profiler.start("api.reportRoundingCompletion")) {
+            return api.reportRoundingCompletion();
+        }
+    }
+
+    public void notifyRecognitionItem() {
+        try (Profiler.Span span = Profiler.start("api.notifyRecognitionItem")) {
+            api.notifyRecognitionItem();
+        }
+    }
+
+    public void takeTargetItemSnapshot() {
+        try (Profiler.Span span = Profiler.start("api.takeTargetItemSnapshot")) {
+            api.takeTargetItemSnapshot();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 以區段 (span) 為單位的計時器，解析度為奈秒。
+ * API 呼叫由 ProfiledApi 代理記錄為 "api." 開頭的區段，
+ * 背景取樣的輪詢記錄為 "sampler." 區段；任務階段 (move、anchor、capture…) 則以 "phase." 開頭，由 YourService 標記。
+ * 用法：try (Profiler.Span span = Profiler.start("api.moveTo")) { ... }
+ * span 只用來在區塊結束時計時、不會被引用，使用的類別以 @SuppressWarnings("try") 關閉對應的 lint 警告。
+ */
+public final class Profiler {
+    private static final String TAG = "Profiler";
+
+    private static final ConcurrentHashMap<String, Stats> STATS = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = true;
+
+    private Profiler() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+
+    /**
+     * 開始一個區段，close() 時記錄經過時間。
+     */
+    public static Span start(String name) {
+        return new Span(name, System.nanoTime());
+    }
+
+    public static void record(String name, long elapsedNanos) {
+        if (!enabled) return;
+        Stats stats = STATS.get(name);
+        if (stats == null) {
+            Stats created = new Stats(name);
+            Stats existing = STATS.putIfAbsent(name, created);
+            stats = existing == null ? created : existing;
+        }
+        stats.add(elapsedNanos);
+    }
+
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * 依總耗時由大到小排序的統計快照。
+     */
+    public static List<Stats> snapshot() {
+        List<Stats> list = new ArrayList<>();
+        for (Stats stats: STATS.values()) list.add(stats.copy());
+        Collections.sort(list, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                return Long.compare(b.total, a.total);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * 將各區段的延遲分布寫入檔案 (TSV)，同時輸出到 log。
+     */
+    public static void write(File file) {
+        StringBuilder builder = new StringBuilder("name\tcount\ttotal_ns\tmean_ns\tmin_ns\tmax_ns\n");
+        for (Stats stats: snapshot()) {
+            builder.append(stats.name).append('\t')
+                .append(stats.count).append('\t')
+                .append(stats.total).append('\t')
+                .append(stats.count == 0 ? 0 : stats.total / stats.count).append('\t')
+                .append(stats.min).append('\t')
+                .append(stats.max).append('\n');
+            Log.i(TAG, stats.toString());
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))) {
+            writer.write(builder.toString());
+            Log.i(TAG, "breakdown written to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 進行中的區段，搭配 try-with-resources 使用。
+     */
+    public static final class Span implements AutoCloseable {
+        private final String name;
+        private final long startNanos;
+        private boolean closed;
+
+        private Span(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            record(name, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * 單一區段的累積統計。
+     */
+    public static final class Stats {
+        private final String name;
+        private long count;
+        private long total;
+        private long min = Long.MAX_VALUE;
+        private long max;
+
+        private Stats(String name) {
+            this.name = name;
+        }
+
+        private synchronized void add(long elapsedNanos) {
+            count++;
+            total += elapsedNanos;
+            min = Math.min(min, elapsedNanos);
+            max = Math.max(max, elapsedNanos);
+        }
+
+        private synchronized Stats copy() {
+            Stats copy = new Stats(name);
+            copy.count = count;
+            copy.total = total;
+            copy.min = count == 0 ? 0 : min;
+            copy.max = max;
+            return copy;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return total;
+        }
+
+        @SuppressLint("DefaultLocale")
+        @Override
+        public String toString() {
+            return String.format("%s: %d calls, total %.3f ms, mean %.3f ms, min %.3f ms, max %.3f ms",
+                name, count, total / 1e6, count == 0 ? 0.0 : total / 1e6 / count, min / 1e6, max / 1e6);
+        }
+    }
+}
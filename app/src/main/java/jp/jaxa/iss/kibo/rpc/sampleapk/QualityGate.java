@@ -0,0 +1,162 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+/**
+ * 影像品質閘門：在進入去畸變、Aruco、透視校正與推論之前，先拒絕模糊或曝光不良的影像。
+ * 支援連拍取最佳、重拍，以及透過前方手電筒調整曝光。
+ */
+public class QualityGate {
+    private static final String TAG = "QualityGate";
+
+    private final double minSharpness; // 最低清晰度 (縮圖上的 Laplacian 變異數)
+    private final double minBrightness; // 最低平均亮度
+    private final double maxBrightness; // 最高平均亮度
+    private final double maxClippedFraction; // 欠曝或過曝像素比例上限
+
+    private int burstSize = 1; // 每次嘗試連拍的張數
+    private int maxAttempts = 1; // 最多嘗試次數 (含第一次)
+    private long retryDelayMillis = 0; // 重拍前的等待時間
+    private float flashlightStep = 0f; // 每次調整手電筒的亮度步進，0 表示不調整
+    private float flashlightLevel = 0f; // 目前的前方手電筒亮度 (0~1)
+    private SettleTrigger trigger; // 非 null 時每次嘗試前先等待機器人靜止
+
+    public QualityGate(double minSharpness, double minBrightness, double maxBrightness, double maxClippedFraction) {
+        this.minSharpness = minSharpness;
+        this.minBrightness = minBrightness;
+        this.maxBrightness = maxBrightness;
+        this.maxClippedFraction = maxClippedFraction;
+    }
+
+    /**
+     * 設定連拍張數，每次嘗試從中挑選清晰度最高的一張。
+     */
+    public QualityGate setBurst(int burstSize) {
+        this.burstSize = Math.max(1, burstSize);
+        return this;
+    }
+
+    /**
+     * 設定重拍策略。
+     *
+     * @param maxAttempts 最多嘗試次數 (含第一次)。
+     * @param retryDelayMillis 重拍前的等待時間，讓機器人有時間靜止。
+     */
+    public QualityGate setRecapture(int maxAttempts, long retryDelayMillis) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMillis = Math.max(0, retryDelayMillis);
+        return this;
+    }
+
+    /**
+     * 設定曝光不良時前方手電筒的調整步進，0 表示不調整。
+     */
+    public QualityGate setFlashlightStep(float flashlightStep) {
+        this.flashlightStep = Math.max(0f, flashlightStep);
+        return this;
+    }
+
+    /**
+     * 設定靜止觸發，每次嘗試 (含重拍) 前都先等待機器人靜止。
+     */
+    public QualityGate setTrigger(SettleTrigger trigger) {
+        this.trigger = trigger;
+        return this;
+    }
+
+    public boolean isSharp(ImageQuality quality) {
+        return quality.getSharpness() >= minSharpness;
+    }
+
+    public boolean isUnderexposed(ImageQuality quality) {
+        return quality.getMeanBrightness() < minBrightness || quality.getDarkFraction() > maxClippedFraction;
+    }
+
+    public boolean isOverexposed(ImageQuality quality) {
+        return quality.getMeanBrightness() > maxBrightness || quality.getBrightFraction() > maxClippedFraction;
+    }
+
+    public boolean accepts(ImageQuality quality) {
+        return isSharp(quality) && !isUnderexposed(quality) && !isOverexposed(quality);
+    }
+
+    /**
+     * 拍攝一張通過閘門的 NavCam 原始影像。
+     * 用完所有嘗試仍未通過時，返回過程中清晰度最高的一張，不會返回 null。
+     *
+     * @param api API 計時代理。
+     * @return 未去畸變的原始影像。
+     */
+    public Mat capture(ProfiledApi api) {
+        Mat best = null;
+        ImageQuality bestQuality = null;
+        boolean bestAccepted = false;
+        float initialFlashlight = flashlightLevel;
+
+        for (int attempt = 1; attempt <= maxAttempts && !bestAccepted; attempt++) {
+            if (attempt > 1 && retryDelayMillis > 0) {
+                try {
+                    Thread.sleep(retryDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (trigger != null) {
+                trigger.await(api);
+            }
+
+            ImageQuality attemptQuality = null;
+            for (int shot = 0; shot < burstSize; shot++) {
+                Mat frame = api.getMatNavCam();
+                ImageQuality quality = ImageQuality.measure(frame);
+                boolean accepted = accepts(quality);
+                Log.i(TAG, "attempt " + attempt + " shot " + shot + ": " + quality + (accepted ? " accepted" : " rejected"));
+
+                // 通過閘門的影像優先，其次比較清晰度
+                if (best == null || (accepted && !bestAccepted)
+                        || (accepted == bestAccepted && quality.getSharpness() > bestQuality.getSharpness())) {
+                    if (best != null) best.release();
+                    best = frame;
+                    bestQuality = quality;
+                    bestAccepted = accepted;
+                } else {
+                    frame.release();
+                }
+                attemptQuality = quality;
+            }
+
+            if (!bestAccepted && attemptQuality != null) {
+                adjustFlashlight(api, attemptQuality);
+            }
+        }
+
+        // 恢復原本的手電筒亮度，避免影響後續拍攝
+        if (flashlightLevel != initialFlashlight) {
+            setFlashlight(api, initialFlashlight);
+        }
+
+        if (!bestAccepted) {
+            Log.w(TAG, "no frame passed the gate, using the sharpest one: " + bestQuality);
+        }
+        return best;
+    }
+
+    private void adjustFlashlight(ProfiledApi api, ImageQuality quality) {
+        if (flashlightStep <= 0f) return;
+        if (isUnderexposed(quality) && flashlightLevel < 1.0f) {
+            setFlashlight(api, Math.min(1.0f, flashlightLevel + flashlightStep));
+        } else if (isOverexposed(quality) && flashlightLevel > 0f) {
+            setFlashlight(api, Math.max(0f, flashlightLevel - flashlightStep));
+        }
+    }
+
+    private void setFlashlight(ProfiledApi api, float level) {
+        api.flashlightControlFront(level);
+        flashlightLevel = level;
+        Log.i(TAG, "front flashlight: " + level);
+    }
+}
@@ -0,0 +1,304 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+
+import gov.nasa.arc.astrobee.types.Quaternion;
+
+/**
+ * 可變的雙精度四元數 (x, y, z, w)，所有運算都就地修改 this 並返回 this。
+ * 範數會被快取，直到下一次修改分量為止。
+ * 與 API 交換資料時再轉換成 Quater / Quaternion。
+ */
+public final class Quat {
+    private static final double SLERP_NLERP_THRESHOLD = 0.9995; // 夾角極小時改用 nlerp，避免除以 sin(θ) ≈ 0
+    private static final double SMALL_ANGLE = 1e-8;
+
+    private double x;
+    private double y;
+    private double z;
+    private double w = 1.0;
+    private double norm = 1.0; // 快取的範數，負值表示需要重新計算
+
+    public Quat() {
+    }
+
+    public Quat(double x, double y, double z, double w) {
+        set(x, y, z, w);
+    }
+
+    public Quat(Quaternion q) {
+        set(q);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getZ() {
+        return z;
+    }
+
+    public double getW() {
+        return w;
+    }
+
+    // --- 設定 ---
+
+    public Quat set(double x, double y, double z, double w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        this.norm = -1.0;
+        return this;
+    }
+
+    public Quat set(Quat q) {
+        this.x = q.x;
+        this.y = q.y;
+        this.z = q.z;
+        this.w = q.w;
+        this.norm = q.norm;
+        return this;
+    }
+
+    public Quat set(Quaternion q) {
+        return set(q.getX(), q.getY(), q.getZ(), q.getW());
+    }
+
+    public Quat setIdentity() {
+        set(0.0, 0.0, 0.0, 1.0);
+        norm = 1.0;
+        return this;
+    }
+
+    /**
+     * 由旋轉軸與角度設定單位四元數，軸不需要是單位向量。
+     */
+    public Quat setAxisAngle(Vec3 axis, double angle) {
+        double length = axis.norm();
+        if (length == 0) return setIdentity();
+        double s = Math.sin(angle / 2) / length;
+        set(axis.x * s, axis.y * s, axis.z * s, Math.cos(angle / 2));
+        norm = 1.0;
+        return this;
+    }
+
+    /**
+     * 由旋轉向量 (軸 × 角度，即 so(3) 的指數映射) 設定單位四元數。
+     */
+    public Quat setRotationVector(Vec3 rotationVector) {
+        double angle = rotationVector.norm();
+        if (angle < SMALL_ANGLE) {
+            // 一階近似，避免 sin(θ/2)/θ 的 0/0
+            set(rotationVector.x / 2, rotationVector.y / 2, rotationVector.z / 2, 1.0);
+            return normalize();
+        }
+        double s = Math.sin(angle / 2) / angle;
+        set(rotationVector.x * s, rotationVector.y * s, rotationVector.z * s, Math.cos(angle / 2));
+        norm = 1.0;
+        return this;
+    }
+
+    // --- 範數 ---
+
+    public double normSquared() {
+        return x * x + y * y + z * z + w * w;
+    }
+
+    public double norm() {
+        if (norm < 0) {
+            norm = Math.sqrt(normSquared());
+        }
+        return norm;
+    }
+
+    public Quat normalize() {
+        double length = norm();
+        if (length == 0) return set(0.0, 0.0, 0.0, 0.0);
+        if (length != 1.0) {
+            double inv = 1.0 / length;
+            x *= inv;
+            y *= inv;
+            z *= inv;
+            w *= inv;
+            norm = 1.0;
+        }
+        return this;
+    }
+
+    // --- 代數運算 ---
+
+    public Quat conjugate() {
+        x = -x;
+        y = -y;
+        z = -z;
+        return this;
+    }
+
+    public Quat inverse() {
+        double quad = normSquared();
+        if (quad == 0) return set(0.0, 0.0, 0.0, 0.0);
+        double inv = 1.0 / quad;
+        set(-x * inv, -y * inv, -z * inv, w * inv);
+        return this;
+    }
+
+    public Quat negate() {
+        x = -x;
+        y = -y;
+        z = -z;
+        w = -w;
+        return this;
+    }
+
+    // this = a * b，a、b 可以是 this
+    public Quat setMul(Quat a, Quat b) {
+        double nx = a.w * b.x + a.x * b.w + a.y * b.z - a.z * b.y;
+        double ny = a.w * b.y - a.x * b.z + a.y * b.w + a.z * b.x;
+        double nz = a.w * b.z + a.x * b.y - a.y * b.x + a.z * b.w;
+        double nw = a.w * b.w - a.x * b.x - a.y * b.y - a.z * b.z;
+        double na = a.norm, nb = b.norm;
+        set(nx, ny, nz, nw);
+        if (na >= 0 && nb >= 0) norm = na * nb;
+        return this;
+    }
+
+    // this = this * b
+    public Quat mul(Quat b) {
+        return setMul(this, b);
+    }
+
+    // this = a * this
+    public Quat preMul(Quat a) {
+        return setMul(a, this);
+    }
+
+    // this = a * conj(b)，單位四元數時即 a 相對於 b 的誤差四元數
+    public Quat setMulConjugate(Quat a, Quat b) {
+        double nx = -a.w * b.x + a.x * b.w - a.y * b.z + a.z * b.y;
+        double ny = -a.w * b.y + a.x * b.z + a.y * b.w - a.z * b.x;
+        double nz = -a.w * b.z - a.x * b.y + a.y * b.x + a.z * b.w;
+        double nw = a.w * b.w + a.x * b.x + a.y * b.y + a.z * b.z;
+        double na = a.norm, nb = b.norm;
+        set(nx, ny, nz, nw);
+        if (na >= 0 && nb >= 0) norm = na * nb;
+        return this;
+    }
+
+    public double dot(Quat q) {
+        return x * q.x + y * q.y + z * q.z + w * q.w;
+    }
+
+    // --- 旋轉量 ---
+
+    /**
+     * 旋轉角度，取最短弧，範圍為 [0, π]。
+     */
+    public double angle() {
+        return 2.0 * Math.atan2(Math.sqrt(x * x + y * y + z * z), Math.abs(w));
+    }
+
+    /**
+     * 對數映射：將單位四元數轉為旋轉向量 (軸 × 角度)，取最短弧。
+     * 誤差四元數經由此路徑轉成控制用的旋轉向量，只需一次 atan2。
+     */
+    public Vec3 toRotationVector(Vec3 out) {
+        double sign = w < 0 ? -1.0 : 1.0;
+        double vx = sign * x, vy = sign * y, vz = sign * z, vw = sign * w;
+        double vectorNorm = Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (vectorNorm < SMALL_ANGLE) {
+            // 小角度：θ ≈ 2|v|/w
+            double s = vw != 0 ? 2.0 / vw : 0.0;
+            return out.set(vx * s, vy * s, vz * s);
+        }
+        double angle = 2.0 * Math.atan2(vectorNorm, vw);
+        double s = angle / vectorNorm;
+        return out.set(vx * s, vy * s, vz * s);
+    }
+
+    /**
+     * 以封閉形式計算實數次方 q^t：|q|^t (cos(tφ), n sin(tφ))，φ = acos(w / |q|)。
+     * 與 Quater.power 的 exp(t log q) 數學上相同，但不需建立中間四元數。
+     */
+    public Quat power(double t) {
+        double length = norm();
+        if (length == 0) return setIdentity(); // 與 Quater.power 的 exp(t * 0) 一致
+        double vectorNorm = Math.sqrt(x * x + y * y + z * z);
+        double scale = Math.pow(length, t);
+        if (vectorNorm == 0) {
+            // 純實數四元數，與 Quater.log/exp 的行為一致
+            set(0.0, 0.0, 0.0, scale);
+            return this;
+        }
+        double phi = Math.atan2(vectorNorm, w);
+        double s = scale * Math.sin(t * phi) / vectorNorm;
+        set(x * s, y * s, z * s, scale * Math.cos(t * phi));
+        norm = scale;
+        return this;
+    }
+
+    /**
+     * 將向量 v 以此單位四元數旋轉，結果寫入 out (v、out 可以是同一物件)。
+     * v' = v + 2w(u × v) + 2u × (u × v)
+     */
+    public Vec3 rotate(Vec3 v, Vec3 out) {
+        double tx = 2.0 * (y * v.z - z * v.y);
+        double ty = 2.0 * (z * v.x - x * v.z);
+        double tz = 2.0 * (x * v.y - y * v.x);
+        return out.set(
+            v.x + w * tx + (y * tz - z * ty),
+            v.y + w * ty + (z * tx - x * tz),
+            v.z + w * tz + (x * ty - y * tx)
+        );
+    }
+
+    // --- 插值 ---
+
+    /**
+     * 正規化線性插值，沿最短弧；結果寫入 this (a、b 可以是 this)。
+     */
+    public Quat setNlerp(Quat a, Quat b, double t) {
+        double sign = a.dot(b) < 0 ? -1.0 : 1.0;
+        double s = 1.0 - t, u = sign * t;
+        set(s * a.x + u * b.x, s * a.y + u * b.y, s * a.z + u * b.z, s * a.w + u * b.w);
+        return normalize();
+    }
+
+    /**
+     * 球面線性插值，沿最短弧；結果寫入 this (a、b 可以是 this)。
+     */
+    public Quat setSlerp(Quat a, Quat b, double t) {
+        double cos = a.dot(b) / (a.norm() * b.norm());
+        double sign = 1.0;
+        if (cos < 0) {
+            cos = -cos;
+            sign = -1.0;
+        }
+        if (cos > SLERP_NLERP_THRESHOLD) {
+            return setNlerp(a, b, t);
+        }
+        double theta = Math.acos(Math.min(1.0, cos));
+        double sin = Math.sin(theta);
+        double s = Math.sin((1.0 - t) * theta) / sin;
+        double u = sign * Math.sin(t * theta) / sin;
+        set(s * a.x + u * b.x, s * a.y + u * b.y, s * a.z + u * b.z, s * a.w + u * b.w);
+        return normalize();
+    }
+
+    // --- 與 API 型別轉換 (會配置新物件，只在邊界使用) ---
+
+    public Quater toQuater() {
+        return new Quater((float) x, (float) y, (float) z, (float) w);
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return String.format("Quat[x=%.5f, y=%.5f, z=%.5f, w=%.5f]", x, y, z, w);
+    }
+}
@@ -15,21 +15,23 @@ public class Quater extends Quaternion implements PIDValue<Quater> {
     }
 
     public Quater(float magnitude, Quaternion argument) {
-        super(
-            magnitude * new Quater(argument).normalize().getX(),
-            magnitude * new Quater(argument).normalize().getY(),
-            magnitude * new Quater(argument).normalize().getZ(),
-            magnitude * new Quater(argument).normalize().getW()
-        );
+        // 只正規化一次
+        this(new Quat(argument).normalize(), magnitude);
     }
 
     public Quater(float radius, Point axis, float angle) {
-        this(
-            radius * (float)Math.sin(angle / 2) * (float)new Vector(axis).normalize().getX(),
-            radius * (float)Math.sin(angle / 2) * (float)new Vector(axis).normalize().getY(),
-            radius * (float)Math.sin(angle / 2) * (float)new Vector(axis).normalize().getZ(),
-            radius * (float)Math.cos(angle / 2)
-        );
+        this(axisAngle(new Vec3(axis), angle), radius);
+    }
+
+    // 軸為零向量時維持原本的結果：虛部為 0、實部為 cos(angle / 2)，而不是單位元；
+    // Quater(Quaternion, float) 以此計算實數的指數，不能被改成 1
+    private static Quat axisAngle(Vec3 axis, float angle) {
+        if (axis.norm() == 0) return new Quat(0.0, 0.0, 0.0, Math.cos(angle / 2));
+        return new Quat().setAxisAngle(axis, angle);
+    }
+
+    private Quater(Quat unit, double scale) {
+        this((float)(scale * unit.getX()), (float)(scale * unit.getY()), (float)(scale * unit.getZ()), (float)(scale * unit.getW()));
     }
 
     public Quater(Point axis, float angle) {
@@ -138,6 +140,15 @@ public class Quater extends Quaternion implements PIDValue<Quater> {
         return mul(new Quater((float)original.getX(), (float)original.getY(), (float)original.getZ(), 0.0f).mul(inv()));
     }
 
+    /**
+     * 返回此四元數所代表的旋轉角度，取最短弧，範圍為 [0, π]。
+     * θ = 2 * atan2(||v||, |w|)，對未正規化的四元數同樣成立。
+     * @return 旋轉角度 (弧度)。
+     */
+    public double angle() {
+        return 2.0 * Math.atan2(magnitude(), Math.abs(getW()));
+    }
+
     /**
      * 返回四元數的實部 (w 分量)。
      * @return 實部值。
@@ -220,14 +231,36 @@ public class Quater extends Quaternion implements PIDValue<Quater> {
     }
 
     /**
-     * 計算四元數的實數次方 q^t = exp(t * log(q))。
+     * 計算四元數的實數次方 q^t = exp(t * log(q)) = |q|^t (cos(tφ), n sin(tφ))。
      * @param exponent 實數指數。
      * @return 計算結果的四元數。
      */
     public Quater power(double exponent) {
-        Quater log_q = this.log();
-        Quater scaled_log_q = log_q.mul((float)exponent);
-        return scaled_log_q.exp();
+        // 以雙精度封閉形式計算，結果與 exp(t * log(q)) 相同
+        return new Quat(this).power(exponent).toQuater();
+    }
+
+    /**
+     * 返回與 reference 同半球的等價單位四元數。q 與 -q 代表同一姿態，
+     * 但控制器與插值會把異半球的 q 當成繞遠路的旋轉，因此下指令前先對齊。
+     * @param reference 參考姿態，通常為目前姿態或前一段的目標姿態。
+     * @return 正規化且與 reference 內積非負的四元數。
+     */
+    public Quater shortestArc(Quaternion reference) {
+        Quater unit = normalize();
+        float dot = unit.getX() * reference.getX() + unit.getY() * reference.getY()
+                  + unit.getZ() * reference.getZ() + unit.getW() * reference.getW();
+        return dot < 0 ? new Quater(-unit.getX(), -unit.getY(), -unit.getZ(), -unit.getW()) : unit;
+    }
+
+    /**
+     * 球面線性插值，沿最短弧。
+     * @param target 終點姿態。
+     * @param t 插值比例，0 為 this，1 為 target。
+     * @return 插值後的單位四元數。
+     */
+    public Quater slerp(Quaternion target, double t) {
+        return new Quat(this).setSlerp(new Quat(this), new Quat(target), t).toQuater();
     }
 
     @SuppressLint("DefaultLocale")
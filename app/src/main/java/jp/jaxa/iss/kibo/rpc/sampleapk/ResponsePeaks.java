@@ -0,0 +1,119 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * matchTemplate 回應圖的峰值分析：一次讀出整張浮點回應圖，只取超過門檻的 3×3 局部極大值，
+ * 再依分數由高到低做非極大值抑制 (NMS)。取代逐像素 get(y, x) 掃描後再去重複的做法。
+ */
+final class ResponsePeaks {
+    private ResponsePeaks() {
+    }
+
+    /**
+     * 回應圖中分數大於門檻的峰值。
+     * @param response matchTemplate 的結果 (CV_32FC1)。
+     * @param threshold 分數門檻 (不含)。
+     * @return 峰值，依分數由高到低排序，尚未做 NMS。
+     */
+    static List<Peak> find(Mat response, double threshold) {
+        Mat data = response;
+        if (response.type() != CvType.CV_32FC1 || !response.isContinuous()) {
+            data = new Mat();
+            response.convertTo(data, CvType.CV_32FC1);
+        }
+        float[] values = new float[data.rows() * data.cols()];
+        data.get(0, 0, values);
+        int rows = data.rows();
+        int cols = data.cols();
+        if (data != response) data.release();
+        return find(values, rows, cols, threshold);
+    }
+
+    /**
+     * 同 find(Mat, double)，輸入為列優先的回應值。
+     * 平坦的峰頂只保留光柵順序中的第一個像素。
+     */
+    static List<Peak> find(float[] values, int rows, int cols, double threshold) {
+        List<Peak> peaks = new ArrayList<>();
+        for (int y = 0; y < rows; y++) {
+            int row = y * cols;
+            for (int x = 0; x < cols; x++) {
+                float v = values[row + x];
+                if (!(v > threshold) || !isPeak(values, rows, cols, x, y, v)) continue;
+                peaks.add(new Peak(x, y, v));
+            }
+        }
+        Collections.sort(peaks, BY_SCORE);
+        return peaks;
+    }
+
+    /**
+     * 依分數由高到低保留峰值，丟棄與已保留峰值距離在 radius 以內者。
+     * @param peaks 任意順序的峰值 (可合併多張回應圖)。
+     * @param radius 抑制半徑 (像素，含)。
+     */
+    static List<Peak> suppress(List<Peak> peaks, double radius) {
+        List<Peak> sorted = new ArrayList<>(peaks);
+        Collections.sort(sorted, BY_SCORE);
+        double r2 = radius * radius;
+        List<Peak> kept = new ArrayList<>();
+        for (Peak peak: sorted) {
+            boolean suppressed = false;
+            for (Peak k: kept) {
+                double dx = peak.x - k.x;
+                double dy = peak.y - k.y;
+                if (dx * dx + dy * dy <= r2) {
+                    suppressed = true;
+                    break;
+                }
+            }
+            if (!suppressed) kept.add(peak);
+        }
+        return kept;
+    }
+
+    // 3×3 鄰域內不小於任何鄰居；相等時只有光柵順序較前者算峰值
+    private static boolean isPeak(float[] values, int rows, int cols, int x, int y, float v) {
+        for (int dy = -1; dy <= 1; dy++) {
+            int ny = y + dy;
+            if (ny < 0 || ny >= rows) continue;
+            for (int dx = -1; dx <= 1; dx++) {
+                int nx = x + dx;
+                if ((dx == 0 && dy == 0) || nx < 0 || nx >= cols) continue;
+                float n = values[ny * cols + nx];
+                boolean before = dy < 0 || (dy == 0 && dx < 0);
+                if (n > v || (before && n == v)) return false;
+            }
+        }
+        return true;
+    }
+
+    // 分數相同時依光柵順序，讓結果與執行順序無關
+    private static final Comparator<Peak> BY_SCORE = new Comparator<Peak>() {
+        @Override
+        public int compare(Peak a, Peak b) {
+            if (a.score != b.score) return Float.compare(b.score, a.score);
+            if (a.y != b.y) return Integer.compare(a.y, b.y);
+            return Integer.compare(a.x, b.x);
+        }
+    };
+
+    static final class Peak {
+        final int x;
+        final int y;
+        final float score;
+
+        Peak(int x, int y, float score) {
+            this.x = x;
+            this.y = y;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.util.Log;
+
+import org.opencv.core.Mat;
+
+import gov.nasa.arc.astrobee.Kinematics;
+
+/**
+ * 靜止觸發：監看線速度與角速度，兩者連續低於門檻達 dwell 時間後立刻拍攝，
+ * 而不是固定等待或接受移動中模糊的影像。逾時仍未靜止時照樣拍攝。
+ */
+public class SettleTrigger {
+    private static final String TAG = "SettleTrigger";
+
+    private final double maxLinearSpeed; // 公尺/秒
+    private final double maxAngularSpeed; // 弧度/秒
+    private final long dwellMillis; // 需連續靜止的時間
+    private final long timeoutMillis; // 等待上限
+    private long pollMillis = 20; // 輪詢間隔
+    private KinematicsSampler sampler; // 非 null 時讀取背景取樣，否則直接呼叫 API
+
+    private final KinematicsSampler.Sample sample = new KinematicsSampler.Sample();
+    private final Vec3 scratch = new Vec3();
+
+    public SettleTrigger(double maxLinearSpeed, double maxAngularSpeed, long dwellMillis, long timeoutMillis) {
+        this.maxLinearSpeed = maxLinearSpeed;
+        this.maxAngularSpeed = maxAngularSpeed;
+        this.dwellMillis = dwellMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public SettleTrigger setPoll(long pollMillis) {
+        this.pollMillis = Math.max(1, pollMillis);
+        return this;
+    }
+
+    public SettleTrigger setSampler(KinematicsSampler sampler) {
+        this.sampler = sampler;
+        return this;
+    }
+
+    /**
+     * 等待機器人靜止。
+     * @param api API 計時代理。
+     * @return 在逾時前靜止為 true，逾時為 false。
+     */
+    public boolean await(ProfiledApi api) {
+        long startTime = System.nanoTime();
+        long stillSince = -1; // 開始靜止的時間，-1 表示目前在移動
+        long lastIndex = -1;
+        double linearSpeed = Double.NaN, angularSpeed = Double.NaN;
+
+        while (true) {
+            long now;
+            if (sampler != null && sampler.isRunning() && sampler.latest(sample)) {
+                // 同一個樣本不重複判斷
+                if (sample.index != lastIndex) {
+                    lastIndex = sample.index;
+                    now = sample.timestampNanos;
+                    linearSpeed = sample.linearSpeed();
+                    angularSpeed = sample.angularSpeed();
+                } else {
+                    now = -1;
+                }
+            } else {
+                Kinematics kinematics = api.getRobotKinematics();
+                now = System.nanoTime();
+                linearSpeed = scratch.set(kinematics.getLinearVelocity()).norm();
+                angularSpeed = scratch.set(kinematics.getAngularVelocity()).norm();
+            }
+
+            if (now >= 0) {
+                if (linearSpeed <= maxLinearSpeed && angularSpeed <= maxAngularSpeed) {
+                    if (stillSince < 0) stillSince = now;
+                    if ((now - stillSince) / 1_000_000L >= dwellMillis) {
+                        Log.i(TAG, "settled after " + (System.nanoTime() - startTime) / 1_000_000L + " ms");
+                        return true;
+                    }
+                } else {
+                    stillSince = -1;
+                }
+            }
+
+            if ((System.nanoTime() - startTime) / 1_000_000L >= timeoutMillis) {
+                Log.w(TAG, "timeout after " + timeoutMillis + " ms, |v| = " + linearSpeed + ", |w| = " + angularSpeed);
+                return false;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 等待靜止後拍攝一張 NavCam 原始影像。
+     * @param api API 計時代理。
+     * @return 未去畸變的原始影像。
+     */
+    public Mat capture(ProfiledApi api) {
+        await(api);
+        return api.getMatNavCam();
+    }
+}
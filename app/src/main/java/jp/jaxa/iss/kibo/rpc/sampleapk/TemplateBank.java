@@ -0,0 +1,346 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import org.opencv.android.Utils;
+import org.opencv.core.CvType;
+import org.opencv.core.KeyPoint;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfKeyPoint;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.features2d.ORB;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 傳統偵測器共用的模板庫：灰階模板、縮放金字塔 (寬度 20 ~ 100 px，每 5 px 一層)、ORB 關鍵點與描述子，
+ * 以及縮放金字塔每層每 45° 的旋轉模板與遮罩 (只在記憶體中)。
+ * 第一次使用時從 assets 解碼並計算，寫成精簡的二進位檔 (filesDir/template_bank.bin)；
+ * 之後以唯讀記憶體映射開啟，各模板在第一次被取用時才從映射區解出 Mat。
+ * APK 更新 (lastUpdateTime 改變) 或參數不同時自動重建。
+ *
+ * 格式 (big-endian)：
+ * header = magic, version, apkTime, orbFeatures, widthMin, widthMax, widthStep, count, offset[count]
+ * entry = gray, scaleCount, scaled[scaleCount], keyPointCount, keyPoint[keyPointCount], descriptors
+ * mat = rows, cols, type, bytes；keyPoint = x, y, size, angle, response, octave, classId
+ */
+@SuppressWarnings("try")
+public final class TemplateBank {
+    private static final String TAG = "TemplateBank";
+    private static final int MAGIC = 0x4B54504C; // "KTPL"
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "template_bank.bin";
+
+    public static final String[] NAMES = {
+            "coin",
+            "compass",
+            "coral",
+            "crystal",
+            "diamond",
+            "emerald",
+            "fossil",
+            "key",
+            "letter",
+            "shell",
+            "treasure_box"
+    };
+
+    public static final int ORB_FEATURES = 500;
+    public static final int WIDTH_MIN = 20; // [px]
+    public static final int WIDTH_MAX = 100; // [px]
+    public static final int WIDTH_STEP = 5; // [px]
+    public static final int ANGLE_STEP = 45; // [deg]
+
+    private static TemplateBank instance;
+
+    private final ByteBuffer buffer; // 唯讀映射區，建立時為 null
+    private final int[] offsets;
+    private final Entry[] entries = new Entry[NAMES.length];
+
+    private TemplateBank(ByteBuffer buffer, int[] offsets) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 取得共用的模板庫，整個行程只建立一次。
+     */
+    public static synchronized TemplateBank get(Context context) {
+        if (instance != null) return instance;
+        try (Profiler.Span span = Profiler.start("templates.load")) {
+            File file = new File(context.getFilesDir(), FILE_NAME);
+            long apkTime = apkTime(context);
+            instance = map(file, apkTime);
+            if (instance == null) instance = build(context, file, apkTime);
+        }
+        return instance;
+    }
+
+    public int size() {
+        return NAMES.length;
+    }
+
+    public String getName(int index) {
+        return NAMES[index];
+    }
+
+    /**
+     * 灰階模板 (共用，呼叫端不可修改或釋放)。
+     */
+    public Mat getGray(int index) {
+        return entry(index).gray;
+    }
+
+    /**
+     * 縮放成指定寬度的模板，寬度須為 WIDTH_MIN ~ WIDTH_MAX 之間 WIDTH_STEP 的倍數。
+     */
+    public Mat getScaled(int index, int width) {
+        return entry(index).scaled[(width - WIDTH_MIN) / WIDTH_STEP];
+    }
+
+    /**
+     * 縮放並旋轉後的模板 (以縮放模板中心旋轉，輸出尺寸不變，與 VanillaObjectDetector 原本的 rotImg 相同)。
+     * @param angle 角度，須為 ANGLE_STEP 的倍數 (0 ~ 315)。
+     */
+    public Mat getRotated(int index, int width, int angle) {
+        return rotations(index).rotated[(width - WIDTH_MIN) / WIDTH_STEP][angle / ANGLE_STEP];
+    }
+
+    /**
+     * getRotated 對應的有效像素遮罩 (255 為模板內容，0 為旋轉後補上的角落)。
+     */
+    public Mat getRotationMask(int index, int width, int angle) {
+        return rotations(index).masks[(width - WIDTH_MIN) / WIDTH_STEP][angle / ANGLE_STEP];
+    }
+
+    /**
+     * 預先產生所有模板的旋轉金字塔，避免第一次偵測時才計算。
+     */
+    public void prepareRotations() {
+        try (Profiler.Span span = Profiler.start("templates.rotate")) {
+            for (int i = 0; i < NAMES.length; i++) rotations(i);
+        }
+    }
+
+    public MatOfKeyPoint getKeyPoints(int index) {
+        return entry(index).keyPoints;
+    }
+
+    public Mat getDescriptors(int index) {
+        return entry(index).descriptors;
+    }
+
+    private synchronized Entry entry(int index) {
+        if (entries[index] == null) {
+            ByteBuffer in = buffer.duplicate();
+            in.position(offsets[index]);
+            entries[index] = readEntry(in);
+        }
+        return entries[index];
+    }
+
+    // 旋轉金字塔只在記憶體中產生：每個模板 17 × 8 組 warpAffine 遠比從磁碟讀回約 10 MB 的影像與遮罩便宜
+    private synchronized Entry rotations(int index) {
+        Entry entry = entry(index);
+        if (entry.rotated != null) return entry;
+        int angles = 360 / ANGLE_STEP;
+        Mat[][] rotated = new Mat[entry.scaled.length][angles];
+        Mat[][] masks = new Mat[entry.scaled.length][angles];
+        for (int s = 0; s < entry.scaled.length; s++) {
+            Mat scaled = entry.scaled[s];
+            Mat full = new Mat(scaled.size(), CvType.CV_8U, new Scalar(255));
+            org.opencv.core.Point center = new org.opencv.core.Point(scaled.cols() / 2, scaled.rows() / 2);
+            for (int a = 0; a < angles; a++) {
+                rotated[s][a] = new Mat();
+                masks[s][a] = new Mat();
+                if (scaled.empty()) continue;
+                Mat rotMat = Imgproc.getRotationMatrix2D(center, a * ANGLE_STEP, 1.0);
+                Imgproc.warpAffine(scaled, rotated[s][a], rotMat, scaled.size());
+                Imgproc.warpAffine(full, masks[s][a], rotMat, scaled.size(), Imgproc.INTER_NEAREST);
+                rotMat.release();
+            }
+            full.release();
+        }
+        entry.masks = masks;
+        entry.rotated = rotated;
+        return entry;
+    }
+
+    private static long apkTime(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0L;
+        }
+    }
+
+    // 開啟並驗證既有的模板庫檔，不符時回傳 null
+    private static TemplateBank map(File file, long apkTime) {
+        if (!file.isFile()) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != apkTime
+                    || buffer.getInt() != ORB_FEATURES || buffer.getInt() != WIDTH_MIN
+                    || buffer.getInt() != WIDTH_MAX || buffer.getInt() != WIDTH_STEP
+                    || buffer.getInt() != NAMES.length) {
+                Log.i(TAG, file + " is outdated, rebuilding");
+                return null;
+            }
+            int[] offsets = new int[NAMES.length];
+            for (int i = 0; i < offsets.length; i++) offsets[i] = buffer.getInt();
+            Log.i(TAG, "mapped " + file + " (" + channel.size() + " bytes)");
+            return new TemplateBank(buffer, offsets);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "failed to map " + file + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    // 從 assets 解碼並計算所有模板，寫入檔案後直接使用記憶體中的結果
+    private static TemplateBank build(Context context, File file, long apkTime) {
+        ORB orb = ORB.create(ORB_FEATURES);
+        TemplateBank bank = new TemplateBank(null, new int[NAMES.length]);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int headerSize = 4 + 4 + 8 + 4 * 5 + 4 * NAMES.length;
+        for (int i = 0; i < NAMES.length; i++) {
+            Mat gray = decode(context, NAMES[i] + ".png");
+            Entry entry = new Entry(gray);
+            for (int s = 0; s < entry.scaled.length && !gray.empty(); s++) {
+                int width = WIDTH_MIN + s * WIDTH_STEP;
+                int height = (int) ((double) gray.rows() / gray.cols() * width);
+                Imgproc.resize(gray, entry.scaled[s], new Size(width, height));
+            }
+            if (!gray.empty()) orb.detectAndCompute(gray, new Mat(), entry.keyPoints, entry.descriptors);
+            bank.entries[i] = entry;
+            bank.offsets[i] = headerSize + body.size();
+            try {
+                writeEntry(new DataOutputStream(body), entry);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(apkTime);
+            out.writeInt(ORB_FEATURES);
+            out.writeInt(WIDTH_MIN);
+            out.writeInt(WIDTH_MAX);
+            out.writeInt(WIDTH_STEP);
+            out.writeInt(NAMES.length);
+            for (int offset: bank.offsets) out.writeInt(offset);
+            body.writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "failed to write " + temp + ": " + e.getMessage(), e);
+            return bank;
+        }
+        if (temp.renameTo(file)) {
+            Log.i(TAG, "built " + file + " (" + (headerSize + body.size()) + " bytes)");
+        } else {
+            Log.e(TAG, "failed to rename " + temp + " to " + file);
+        }
+        return bank;
+    }
+
+    private static Mat decode(Context context, String fileName) {
+        Mat mat = new Mat();
+        try (InputStream inputStream = context.getAssets().open(fileName)) {
+            Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
+            Utils.bitmapToMat(bitmap, mat);
+            bitmap.recycle();
+            if (mat.channels() > 1) {
+                Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading template image: " + fileName, e);
+        }
+        return mat;
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        writeMat(out, entry.gray);
+        out.writeInt(entry.scaled.length);
+        for (Mat scaled: entry.scaled) writeMat(out, scaled);
+        KeyPoint[] keyPoints = entry.keyPoints.toArray();
+        out.writeInt(keyPoints.length);
+        for (KeyPoint kp: keyPoints) {
+            out.writeFloat((float) kp.pt.x);
+            out.writeFloat((float) kp.pt.y);
+            out.writeFloat(kp.size);
+            out.writeFloat(kp.angle);
+            out.writeFloat(kp.response);
+            out.writeInt(kp.octave);
+            out.writeInt(kp.class_id);
+        }
+        writeMat(out, entry.descriptors);
+    }
+
+    private static Entry readEntry(ByteBuffer in) {
+        Entry entry = new Entry(readMat(in));
+        int scales = in.getInt();
+        for (int s = 0; s < scales && s < entry.scaled.length; s++) entry.scaled[s] = readMat(in);
+        KeyPoint[] keyPoints = new KeyPoint[in.getInt()];
+        for (int k = 0; k < keyPoints.length; k++) {
+            keyPoints[k] = new KeyPoint(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat(), in.getInt(), in.getInt());
+        }
+        entry.keyPoints.fromArray(keyPoints);
+        entry.descriptors = readMat(in);
+        return entry;
+    }
+
+    // 只支援 8 位元的 Mat (模板與 ORB 描述子皆是)
+    private static void writeMat(DataOutputStream out, Mat mat) throws IOException {
+        out.writeInt(mat.rows());
+        out.writeInt(mat.cols());
+        out.writeInt(mat.type());
+        byte[] data = new byte[(int) (mat.total() * mat.channels())];
+        if (data.length > 0) mat.get(0, 0, data);
+        out.write(data);
+    }
+
+    private static Mat readMat(ByteBuffer in) {
+        int rows = in.getInt(), cols = in.getInt(), type = in.getInt();
+        if (rows == 0 || cols == 0) return new Mat();
+        Mat mat = new Mat(rows, cols, type);
+        byte[] data = new byte[rows * cols * CvType.channels(type)];
+        in.get(data);
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    private static final class Entry {
+        final Mat gray;
+        final Mat[] scaled = new Mat[(WIDTH_MAX - WIDTH_MIN) / WIDTH_STEP + 1];
+        final MatOfKeyPoint keyPoints = new MatOfKeyPoint();
+        Mat descriptors = new Mat();
+        Mat[][] rotated; // [縮放][角度]，第一次取用時產生
+        Mat[][] masks;
+
+        Entry(Mat gray) {
+            this.gray = gray;
+            for (int s = 0; s < scaled.length; s++) scaled[s] = new Mat();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateBank{ templates = " + NAMES.length + ", mapped = " + (buffer != null) + " }";
+    }
+}
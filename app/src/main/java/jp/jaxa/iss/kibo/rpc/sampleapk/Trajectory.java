@@ -0,0 +1,256 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+import android.util.Log;
+
+import gov.nasa.arc.astrobee.Result;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 將一串座標系 (knots，第一個為起點) 組成單一路徑：位置為折線、姿態以弧長比例做 SLERP，
+ * 時間以梯形速度曲線 (最大速度、最大加速度) 參數化。
+ * API 只提供阻塞式的 moveTo，無法串流設定點，因此執行時以減少阻塞指令數為主：
+ * 先以 shortcut 去掉可以直接跳過的 knot，再把旋轉平均分散到各段，避免在某一點停下來原地旋轉。
+ */
+public class Trajectory {
+    private static final String TAG = "Trajectory";
+
+    /**
+     * 執行進度回呼。
+     */
+    public interface Listener {
+        /**
+         * @param leg 剛完成的段落 (從 1 開始)。
+         * @param legs 總段數。
+         * @param reached 抵達的座標系。
+         * @param expectedSeconds 依速度曲線預期到此 knot 的時間。
+         * @param elapsedSeconds 實際經過的時間。
+         */
+        void onProgress(int leg, int legs, Frame reached, double expectedSeconds, double elapsedSeconds);
+    }
+
+    private final List<Frame> knots;
+    private final double[] cumulative; // 每個 knot 的累積弧長
+    private final double[] rotations; // 每一段的預期旋轉角度 (弧度)，rotations[i] 為 knot i-1 → i
+    private final double maxSpeed; // 公尺/秒
+    private final double maxAcceleration; // 公尺/秒²
+
+    // 梯形速度曲線參數
+    private final double accelerationTime;
+    private final double cruiseTime;
+    private final double peakSpeed;
+
+    public Trajectory(List<Frame> knots, double maxSpeed, double maxAcceleration) {
+        if (knots.isEmpty()) throw new IllegalArgumentException("trajectory needs at least one knot");
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+
+        // 姿態規劃：每個 knot 對齊前一個 knot 的半球，整條路徑都走最短弧
+        List<Frame> aligned = new ArrayList<>(knots.size());
+        aligned.add(knots.get(0).shortestArc(knots.get(0)));
+        for (int i = 1; i < knots.size(); i++) {
+            aligned.add(knots.get(i).shortestArc(aligned.get(i - 1)));
+        }
+        this.knots = Collections.unmodifiableList(aligned);
+
+        cumulative = new double[knots.size()];
+        rotations = new double[knots.size()];
+        Vec3 p = new Vec3(knots.get(0).getPosition());
+        for (int i = 1; i < knots.size(); i++) {
+            cumulative[i] = cumulative[i - 1] + p.distance(knots.get(i).getPosition());
+            rotations[i] = this.knots.get(i - 1).rotationAngle(this.knots.get(i));
+            p.set(knots.get(i).getPosition());
+        }
+
+        double length = length();
+        if (length * maxAcceleration >= maxSpeed * maxSpeed) {
+            // 梯形：加速到最大速度、等速、減速
+            peakSpeed = maxSpeed;
+            accelerationTime = maxSpeed / maxAcceleration;
+            cruiseTime = (length - maxSpeed * accelerationTime) / maxSpeed;
+        } else {
+            // 三角形：距離太短，達不到最大速度
+            accelerationTime = Math.sqrt(length / maxAcceleration);
+            peakSpeed = maxAcceleration * accelerationTime;
+            cruiseTime = 0.0;
+        }
+    }
+
+    public List<Frame> getKnots() {
+        return knots;
+    }
+
+    public double length() {
+        return cumulative[cumulative.length - 1];
+    }
+
+    // 段數，即不含起點的 knot 數
+    public int legs() {
+        return knots.size() - 1;
+    }
+
+    /**
+     * 第 leg 段 (從 1 開始) 的平移距離 (公尺)。
+     */
+    public double legLength(int leg) {
+        return cumulative[leg] - cumulative[leg - 1];
+    }
+
+    /**
+     * 第 leg 段 (從 1 開始) 的預期旋轉角度 (弧度)。
+     */
+    public double rotationAngle(int leg) {
+        return rotations[leg];
+    }
+
+    // 整條路徑的總旋轉角度 (弧度)
+    public double rotationAngle() {
+        double total = 0.0;
+        for (double rotation: rotations) total += rotation;
+        return total;
+    }
+
+    public double duration() {
+        return 2.0 * accelerationTime + cruiseTime;
+    }
+
+    /**
+     * 速度曲線下，時間 t 對應的弧長。
+     */
+    public double arcLengthAt(double t) {
+        t = Math.max(0.0, Math.min(duration(), t));
+        double ramp = 0.5 * peakSpeed * accelerationTime;
+        if (t < accelerationTime) {
+            return 0.5 * maxAcceleration * t * t;
+        }
+        if (t < accelerationTime + cruiseTime) {
+            return ramp + peakSpeed * (t - accelerationTime);
+        }
+        double d = duration() - t;
+        return length() - 0.5 * maxAcceleration * d * d;
+    }
+
+    /**
+     * 弧長 s 對應的時間，arcLengthAt 的反函數。
+     */
+    public double timeAt(double s) {
+        if (peakSpeed == 0) return 0.0;
+        s = Math.max(0.0, Math.min(length(), s));
+        double ramp = 0.5 * peakSpeed * accelerationTime;
+        if (s < ramp) {
+            return Math.sqrt(2.0 * s / maxAcceleration);
+        }
+        if (s <= length() - ramp) {
+            return accelerationTime + (s - ramp) / peakSpeed;
+        }
+        return duration() - Math.sqrt(2.0 * (length() - s) / maxAcceleration);
+    }
+
+    /**
+     * 時間 t 的位姿：位置沿折線內插，姿態在相鄰 knot 之間做 SLERP。
+     */
+    public Frame sample(double t) {
+        return sampleArcLength(arcLengthAt(t));
+    }
+
+    public Frame sampleArcLength(double s) {
+        int i = segmentAt(s);
+        if (i >= knots.size() - 1) return knots.get(knots.size() - 1);
+        double span = cumulative[i + 1] - cumulative[i];
+        double u = span > 0 ? (s - cumulative[i]) / span : 1.0;
+        Frame a = knots.get(i), b = knots.get(i + 1);
+        Vec3 position = new Vec3().setLerp(new Vec3(a.getPosition()), new Vec3(b.getPosition()), u);
+        Quat orientation = new Quat().setSlerp(new Quat(a.getOrientation()).normalize(), new Quat(b.getOrientation()).normalize(), u);
+        return new Frame(position.toVector(), orientation.toQuater());
+    }
+
+    // 弧長 s 所在的段落 i (cumulative[i] <= s < cumulative[i + 1])，二分搜尋
+    private int segmentAt(double s) {
+        int lo = 0, hi = cumulative.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cumulative[mid] <= s) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * 將旋轉依弧長比例分散到中間的 knot：姿態為起點到終點的 SLERP，
+     * 讓每一段移動都同時平移與旋轉。
+     */
+    public Trajectory spreadRotation() {
+        if (knots.size() <= 2 || length() == 0) return this;
+        Quat first = new Quat(knots.get(0).getOrientation()).normalize();
+        Quat last = new Quat(knots.get(knots.size() - 1).getOrientation()).normalize();
+        Quat q = new Quat();
+        List<Frame> spread = new ArrayList<>(knots.size());
+        spread.add(knots.get(0));
+        for (int i = 1; i < knots.size() - 1; i++) {
+            q.setSlerp(first, last, cumulative[i] / length());
+            spread.add(new Frame(knots.get(i).getPosition(), q.toQuater()));
+        }
+        spread.add(knots.get(knots.size() - 1));
+        return new Trajectory(spread, maxSpeed, maxAcceleration);
+    }
+
+    /**
+     * 以貪婪法去掉多餘的 knot：從目前 knot 直接連到最遠且無碰撞的 knot。
+     * @param planner 用來檢查線段是否位於 keep-in 內且不穿過 keep-out。
+     */
+    public Trajectory shortcut(PathPlanner planner) {
+        if (knots.size() <= 2) return this;
+        List<Frame> kept = new ArrayList<>();
+        kept.add(knots.get(0));
+        int i = 0;
+        while (i < knots.size() - 1) {
+            Vec3 from = new Vec3(knots.get(i).getPosition());
+            int j = knots.size() - 1;
+            while (j > i + 1 && !planner.isFree(from, new Vec3(knots.get(j).getPosition()))) {
+                j--;
+            }
+            kept.add(knots.get(j));
+            i = j;
+        }
+        return kept.size() == knots.size() ? this : new Trajectory(kept, maxSpeed, maxAcceleration);
+    }
+
+    /**
+     * 依序移動到每個 knot (跳過起點)，任一段失敗即停止。
+     * 每段的平移與旋轉在同一個 moveTo 中同時進行。
+     * @param api API 計時代理。
+     * @param telemetry 記錄每一段的耗時供成本模型擬合，可為 null。
+     * @param listener 進度回呼，可為 null。
+     * @return 最後一段移動的結果，沒有任何移動時為 null。
+     */
+    @SuppressLint("DefaultLocale")
+    public Result execute(ProfiledApi api, MotionTelemetry telemetry, Listener listener) {
+        long startTime = System.nanoTime();
+        int legs = knots.size() - 1;
+        Result result = null;
+        for (int i = 1; i <= legs; i++) {
+            Frame knot = knots.get(i);
+            Log.i(TAG, String.format("leg %d/%d: %.3f m, %.1f°", i, legs, cumulative[i] - cumulative[i - 1], Math.toDegrees(rotations[i])));
+            long legStart = System.nanoTime();
+            result = knot.moveTo(api, false);
+            if (telemetry != null) telemetry.record(knots.get(i - 1), knot, System.nanoTime() - legStart, result);
+            double elapsed = (System.nanoTime() - startTime) / 1e9;
+            double expected = timeAt(cumulative[i]);
+            if (listener != null) listener.onProgress(i, legs, knot, expected, elapsed);
+            if (result == null || !result.hasSucceeded()) {
+                Log.w(TAG, "leg " + i + "/" + legs + " failed" + (result == null ? "" : ": " + result.getMessage()));
+                break;
+            }
+        }
+        return result;
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return String.format("Trajectory{ knots = %d, length = %.3f m, rotation = %.1f°, duration = %.2f s }", knots.size(), length(), Math.toDegrees(rotationAngle()), duration());
+    }
+}
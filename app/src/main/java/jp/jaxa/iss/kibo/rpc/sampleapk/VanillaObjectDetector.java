@@ -1,79 +1,35 @@
 package jp.jaxa.iss.kibo.rpc.sampleapk;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Log;
 
-import org.opencv.android.Utils;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class VanillaObjectDetector extends ObjectDetector {
     private final String TAG = this.getClass().getSimpleName();
 
-    private final String[] TEMPLATE_FILE_NAMES = {
-            "coin.png",
-            "compass.png",
-            "coral.png",
-            "crystal.png",
-            "diamond.png",
-            "emerald.png",
-            "fossil.png",
-            "key.png",
-            "letter.png",
-            "shell.png",
-            "treasure_box.png"
-    };
-
-    private final String[] TEMPLATE_NAMES = {
-            "coin",
-            "compass",
-            "coral",
-            "crystal",
-            "diamond",
-            "emerald",
-            "fossil",
-            "key",
-            "letter",
-            "shell",
-            "treasure_box"
-    };
-
-    Mat[] templates;
+    private final String[] TEMPLATE_NAMES = TemplateBank.NAMES;
+
+    // Shared template bank: grayscale templates with their scaled and rotated versions
+    private final TemplateBank bank;
+
+    // Ignore the corners filled in by rotation when matching (off keeps the original scores)
+    private volatile boolean masked = false;
 
     public VanillaObjectDetector(Context context) {
-        // Load template images
-        templates = new Mat[TEMPLATE_FILE_NAMES.length];
-        for (int i = 0; i < TEMPLATE_FILE_NAMES.length; i++) {
-            try{
-                // Open the template image file in Bitmap from the file name and convert to Mat
-                InputStream inputStream = context.getAssets().open(TEMPLATE_FILE_NAMES[i]);
-                Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
-                Mat mat = new Mat();
-                Utils.bitmapToMat(bitmap, mat);
-
-                // Convert the Bitmap to grayscale
-                Imgproc.cvtColor(mat, mat, Imgproc.COLOR_BGR2GRAY);
-
-                // Assign to an array of templates
-                templates[i] = mat;
-
-                // Release the InputStream
-                inputStream.close();
-
-            } catch (IOException e) {
-                Log.e(TAG, "Error loading template image: " + TEMPLATE_FILE_NAMES[i], e);
-                e.printStackTrace();
-            }
-        }
+        bank = TemplateBank.get(context);
+        // Build every (template, size, angle) once so that detect only matches
+        bank.prepareRotations();
+    }
+
+    public VanillaObjectDetector setMasked(boolean masked) {
+        this.masked = masked;
+        return this;
     }
 
     @Override
@@ -81,77 +37,37 @@ public class VanillaObjectDetector extends ObjectDetector {
         List<ItemInfo> items = new ArrayList<>();
 
         // Number of matches for each template
-        int[] numMatches = new int[TEMPLATE_FILE_NAMES.length];
-
-        // Get the number of template matches
-        for (int tempNum = 0; tempNum < templates.length; tempNum++) {
-            // number of matches
-            int matchCount = 0;
-            // Coordinates of the match location
-            List<org.opencv.core.Point> matchLocations = new ArrayList<>();
-
-            // Load the template image
-            Mat template = templates[tempNum].clone();
-            // Target image is the undistorted image
-            Mat targetImg = inputMat.clone();
-
-            // Pattern matching
-            int widthMin = 20; //[px]
-            int widthMax = 100; //[px]
-            int changeWidth = 5; //[px]
-            int changeAngle = 45; //[px]
+        int[] numMatches = new int[TEMPLATE_NAMES.length];
 
+        // Pattern matching
+        int widthMin = TemplateBank.WIDTH_MIN; //[px]
+        int widthMax = TemplateBank.WIDTH_MAX; //[px]
+        int changeWidth = TemplateBank.WIDTH_STEP; //[px]
+
+        // One task per (template, size); the input image is shared read-only
+        List<Callable<List<ResponsePeaks.Peak>>> tasks = new ArrayList<>();
+        for (int tempNum = 0; tempNum < TEMPLATE_NAMES.length; tempNum++) {
+            for (int size = widthMin; size <= widthMax; size += changeWidth) {
+                final int template = tempNum;
+                final int width = size;
+                tasks.add(() -> matchScale(inputMat, template, width));
+            }
+        }
+        List<List<ResponsePeaks.Peak>> results = invokeAll(tasks);
+
+        int task = 0;
+        for (int tempNum = 0; tempNum < TEMPLATE_NAMES.length; tempNum++) {
+            // Peaks of every size and angle of this template
+            List<ResponsePeaks.Peak> matchPeaks = new ArrayList<>();
             for (int size = widthMin; size <= widthMax; size += changeWidth) {
-                for (int angle = 0; angle < 360; angle += changeAngle) {
-                    // Resize the template image
-                    Mat resizedTemplate = scalingresizeImage(template, size);
-                    // Rotate the template image
-                    Mat rotatedTemplate = rotImg(resizedTemplate, angle);
-
-                    // Perform template matching
-                    Mat result = new Mat();
-                    Imgproc.matchTemplate(targetImg, rotatedTemplate, result, Imgproc.TM_CCOEFF_NORMED);
-
-                    // Thresholding
-                    double threshold = 0.7;
-                    Core.MinMaxLocResult mmlr = Core.minMaxLoc(result);
-
-                    double maxVal = mmlr.maxVal;
-
-                    if (maxVal >= threshold) {
-                        // Create a mask for the detected region
-                        Mat thresholdResult = new Mat();
-                        Imgproc.threshold(result, thresholdResult, threshold, 1, Imgproc.THRESH_TOZERO);
-
-                        // Get coordinates of the detected region
-                        for (int y = 0; y < thresholdResult.rows(); y++) {
-                            for (int x = 0; x < thresholdResult.cols(); x++) {
-                                if (thresholdResult.get(y, x)[0] > 0) {
-                                    matchLocations.add(new org.opencv.core.Point(x, y));
-                                }
-                            }
-                        }
-
-                        // Release resources
-                        thresholdResult.release();
-                    }
-
-                    // Release resources
-                    result.release();
-                    rotatedTemplate.release();
-                    resizedTemplate.release();
-                }
+                matchPeaks.addAll(results.get(task++));
             }
 
-            List<org.opencv.core.Point> filteredMatches = removeDuplicates(matchLocations);
-            matchCount += filteredMatches.size();
+            // Score-ordered suppression within 10 px
+            List<ResponsePeaks.Peak> filteredMatches = ResponsePeaks.suppress(matchPeaks, 10);
 
             // Number of matches
-            numMatches[tempNum] = matchCount;
-
-            // Release resources
-            template.release();
-            targetImg.release();
+            numMatches[tempNum] = filteredMatches.size();
         }
 
         // Find the most matched template
@@ -163,60 +79,39 @@ public class VanillaObjectDetector extends ObjectDetector {
         return items;
     }
 
-    private Mat scalingresizeImage(Mat image, int width) {
-        int height = (int) ((double) image.rows() / image.cols() * width);
-        // Create a new Mat object to hold the resized image
-        Mat resizedImage = new Mat();
-
-        // Resize the image using the specified width and height
-        Imgproc.resize(image, resizedImage, new Size(width, height));
-
-        return resizedImage;
-    }
-
-    private Mat rotImg(Mat img, int angle) {
-        // Get the center of the image
-        org.opencv.core.Point center = new org.opencv.core.Point(img.cols() / 2, img.rows() / 2);
-
-        // Create a rotation matrix
-        Mat rotMat = Imgproc.getRotationMatrix2D(center, angle, 1.0);
-
-        // Create a new Mat object to hold the rotated image
-        Mat rotatedImg = new Mat();
-
-        // Rotate the image using the rotation matrix
-        Imgproc.warpAffine(img, rotatedImg, rotMat, img.size());
-
-        // Release resources
-        rotMat.release();
+    // Match one scaled template at every angle; scratch Mats belong to this task only
+    private List<ResponsePeaks.Peak> matchScale(Mat targetImg, int tempNum, int size) {
+        List<ResponsePeaks.Peak> matchPeaks = new ArrayList<>();
+        int changeAngle = TemplateBank.ANGLE_STEP; //[deg]
+        double threshold = 0.7;
+
+        Mat result = new Mat();
+        for (int angle = 0; angle < 360; angle += changeAngle) {
+            // Pre-rotated template from the bank (shared, must not be released)
+            Mat rotatedTemplate = bank.getRotated(tempNum, size, angle);
+            if (rotatedTemplate.empty()) continue;
+
+            // Perform template matching
+            if (masked) {
+                Imgproc.matchTemplate(targetImg, rotatedTemplate, result, Imgproc.TM_CCOEFF_NORMED,
+                        bank.getRotationMask(tempNum, size, angle));
+            } else {
+                Imgproc.matchTemplate(targetImg, rotatedTemplate, result, Imgproc.TM_CCOEFF_NORMED);
+            }
 
-        return rotatedImg;
-    }
+            // Thresholding
+            Core.MinMaxLocResult mmlr = Core.minMaxLoc(result);
 
-    private List<org.opencv.core.Point> removeDuplicates(List<org.opencv.core.Point> points) {
-        double length = 10; // within 10 px
-        List<org.opencv.core.Point> uniquePoints = new ArrayList<>();
-        for (org.opencv.core.Point point : points) {
-            boolean isIncluded = false;
-            for (org.opencv.core.Point uniquePoint : uniquePoints) {
-                double distance = calculateDistance(point, uniquePoint);
-
-                if (distance <= length){
-                    isIncluded = true;
-                    break;
-                }
-            }
+            double maxVal = mmlr.maxVal;
 
-            if (!isIncluded) {
-                uniquePoints.add(point);
+            if (maxVal >= threshold) {
+                // Local maxima above the threshold, read in one transfer
+                matchPeaks.addAll(ResponsePeaks.find(result, threshold));
             }
         }
-        return uniquePoints;
-    }
+        result.release();
 
-    private double calculateDistance(org.opencv.core.Point p1, org.opencv.core.Point p2) {
-        // Calculate the distance between two points using the Euclidean distance formula
-        return Math.sqrt(Math.pow(p2.x - p1.x, 2) + Math.pow(p2.y - p1.y, 2));
+        return matchPeaks;
     }
 
     private int getMxIndex(int[] array){
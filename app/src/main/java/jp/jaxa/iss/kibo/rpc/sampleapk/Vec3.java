@@ -0,0 +1,175 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import android.annotation.SuppressLint;
+
+import gov.nasa.arc.astrobee.types.Point;
+import gov.nasa.arc.astrobee.types.Vec3d;
+
+/**
+ * 可變的三維向量，所有運算都就地修改 this 並返回 this，不配置新物件。
+ * 用於高頻率控制迴圈；與 API 交換資料時再轉換成 Vector / Point。
+ */
+public final class Vec3 {
+    public double x;
+    public double y;
+    public double z;
+
+    public Vec3() {
+    }
+
+    public Vec3(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public Vec3(Point p) {
+        set(p);
+    }
+
+    // --- 設定 ---
+
+    public Vec3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3 set(Vec3 v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    public Vec3 set(Point p) {
+        return set(p.getX(), p.getY(), p.getZ());
+    }
+
+    public Vec3 set(Vec3d v) {
+        double[] a = v.toArray();
+        return set(a[0], a[1], a[2]);
+    }
+
+    public Vec3 setZero() {
+        return set(0.0, 0.0, 0.0);
+    }
+
+    // --- 就地運算 ---
+
+    public Vec3 add(Vec3 v) {
+        x += v.x;
+        y += v.y;
+        z += v.z;
+        return this;
+    }
+
+    public Vec3 add(Point p) {
+        x += p.getX();
+        y += p.getY();
+        z += p.getZ();
+        return this;
+    }
+
+    public Vec3 sub(Vec3 v) {
+        x -= v.x;
+        y -= v.y;
+        z -= v.z;
+        return this;
+    }
+
+    public Vec3 sub(Point p) {
+        x -= p.getX();
+        y -= p.getY();
+        z -= p.getZ();
+        return this;
+    }
+
+    public Vec3 scale(double s) {
+        x *= s;
+        y *= s;
+        z *= s;
+        return this;
+    }
+
+    // this += v * s
+    public Vec3 addScaled(Vec3 v, double s) {
+        x += v.x * s;
+        y += v.y * s;
+        z += v.z * s;
+        return this;
+    }
+
+    public Vec3 negate() {
+        return scale(-1.0);
+    }
+
+    // this = a - b，輸出參數形式，a、b 可以是 this
+    public Vec3 setSub(Vec3 a, Vec3 b) {
+        return set(a.x - b.x, a.y - b.y, a.z - b.z);
+    }
+
+    // this = a + b，輸出參數形式，a、b 可以是 this
+    public Vec3 setAdd(Vec3 a, Vec3 b) {
+        return set(a.x + b.x, a.y + b.y, a.z + b.z);
+    }
+
+    // this = a × b，a、b 可以是 this
+    public Vec3 setCross(Vec3 a, Vec3 b) {
+        return set(
+            a.y * b.z - b.y * a.z,
+            a.z * b.x - b.z * a.x,
+            a.x * b.y - b.x * a.y
+        );
+    }
+
+    // this = a + (b - a) * t
+    public Vec3 setLerp(Vec3 a, Vec3 b, double t) {
+        return set(a.x + (b.x - a.x) * t, a.y + (b.y - a.y) * t, a.z + (b.z - a.z) * t);
+    }
+
+    public Vec3 normalize() {
+        double length = norm();
+        return length == 0 ? setZero() : scale(1.0 / length);
+    }
+
+    // 將長度限制在 maxNorm 以內
+    public Vec3 clampNorm(double maxNorm) {
+        double length = norm();
+        return length > maxNorm && length > 0 ? scale(maxNorm / length) : this;
+    }
+
+    // --- 純量查詢 ---
+
+    public double dot(Vec3 v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    public double normSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public double norm() {
+        return Math.sqrt(normSquared());
+    }
+
+    public double distance(Vec3 v) {
+        double dx = x - v.x, dy = y - v.y, dz = z - v.z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    public double distance(Point p) {
+        double dx = x - p.getX(), dy = y - p.getY(), dz = z - p.getZ();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    // --- 與 API 型別轉換 (會配置新物件，只在邊界使用) ---
+
+    public Vector toVector() {
+        return new Vector(x, y, z);
+    }
+
+    @SuppressLint("DefaultLocale")
+    @Override
+    public String toString() {
+        return String.format("Vec3[x=%.3f, y=%.3f, z=%.3f]", x, y, z);
+    }
+}
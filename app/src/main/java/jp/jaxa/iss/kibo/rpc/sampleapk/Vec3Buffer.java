@@ -0,0 +1,121 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import gov.nasa.arc.astrobee.types.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 以單一 double[] 連續儲存 (x, y, z) 的向量陣列，存取時不配置新物件。
+ */
+public final class Vec3Buffer {
+    private double[] data;
+    private int size;
+
+    public Vec3Buffer(int capacity) {
+        this.data = new double[3 * Math.max(1, capacity)];
+    }
+
+    public static Vec3Buffer of(List<? extends Point> points) {
+        Vec3Buffer buffer = new Vec3Buffer(points.size());
+        for (Point p : points) {
+            buffer.add(p.getX(), p.getY(), p.getZ());
+        }
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return data.length / 3;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // 直接存取底層陣列，第 i 個向量位於 [3i, 3i + 3)
+    public double[] array() {
+        return data;
+    }
+
+    public void add(double x, double y, double z) {
+        ensureCapacity(size + 1);
+        int i = 3 * size++;
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = z;
+    }
+
+    public void add(Vec3 v) {
+        add(v.x, v.y, v.z);
+    }
+
+    public void set(int index, double x, double y, double z) {
+        checkIndex(index);
+        int i = 3 * index;
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = z;
+    }
+
+    public void set(int index, Vec3 v) {
+        set(index, v.x, v.y, v.z);
+    }
+
+    // 讀取第 index 個向量到 out，返回 out
+    public Vec3 get(int index, Vec3 out) {
+        checkIndex(index);
+        int i = 3 * index;
+        return out.set(data[i], data[i + 1], data[i + 2]);
+    }
+
+    public double x(int index) {
+        return data[3 * index];
+    }
+
+    public double y(int index) {
+        return data[3 * index + 1];
+    }
+
+    public double z(int index) {
+        return data[3 * index + 2];
+    }
+
+    // 計算所有向量的平均值，寫入 out
+    public Vec3 mean(Vec3 out) {
+        out.setZero();
+        if (size == 0) return out;
+        for (int i = 0; i < 3 * size; i += 3) {
+            out.x += data[i];
+            out.y += data[i + 1];
+            out.z += data[i + 2];
+        }
+        return out.scale(1.0 / size);
+    }
+
+    // 轉換為 Vector 清單 (會配置新物件，只在邊界使用)
+    public List<Vector> toVectors() {
+        List<Vector> vectors = new ArrayList<>(size);
+        for (int i = 0; i < 3 * size; i += 3) {
+            vectors.add(new Vector(data[i], data[i + 1], data[i + 2]));
+        }
+        return vectors;
+    }
+
+    private void ensureCapacity(int required) {
+        if (3 * required > data.length) {
+            double[] grown = new double[Math.max(3 * required, 2 * data.length)];
+            System.arraycopy(data, 0, grown, 0, 3 * size);
+            data = grown;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package jp.jaxa.iss.kibo.rpc.sampleapk;
+
+import gov.nasa.arc.astrobee.types.Point;
+
+/**
+ * 三維向量專用的 PID 控制器，與 PIDController&lt;Vector&gt; 共用 PIDCore 的演算法，
+ * 但狀態都是就地更新的 Vec3，輸出寫入呼叫端提供的 Vec3，每次更新不配置新物件。
+ */
+public class Vec3PIDController {
+    private static final PIDCore.Algebra<Vec3> ALGEBRA = new PIDCore.Algebra<Vec3>() {
+        @Override
+        public Vec3 create() {
+            return new Vec3();
+        }
+
+        @Override
+        public void setZero(Vec3 dst) {
+            dst.setZero();
+        }
+
+        @Override
+        public void set(Vec3 dst, Vec3 src) {
+            dst.set(src);
+        }
+
+        @Override
+        public void setSub(Vec3 dst, Vec3 a, Vec3 b) {
+            dst.setSub(a, b);
+        }
+
+        @Override
+        public void add(Vec3 dst, Vec3 v) {
+            dst.add(v);
+        }
+
+        @Override
+        public void addScaled(Vec3 dst, Vec3 v, double s) {
+            dst.addScaled(v, s);
+        }
+
+        @Override
+        public void scale(Vec3 dst, double s) {
+            dst.scale(s);
+        }
+
+        @Override
+        public double norm(Vec3 v) {
+            return v.norm();
+        }
+    };
+
+    private final PIDCore<Vec3> core;
+    private final Vec3 measurement = new Vec3(); // Point 轉換用的暫存向量
+
+    public Vec3PIDController(double Kp, double Ki, double Kd, double integralLimit) {
+        core = new PIDCore<>(ALGEBRA, Kp, Ki, Kd, integralLimit);
+    }
+
+    public Vec3PIDController(double Kp, double Ki, double Kd) {
+        this(Kp, Ki, Kd, Double.MAX_VALUE); // 預設為不限制積分
+    }
+
+    // 設定時間來源
+    public Vec3PIDController setClock(PIDController.Clock clock) {
+        core.setClock(clock);
+        return this;
+    }
+
+    // 設定輸出的 magnitude 上限
+    public Vec3PIDController setOutputLimit(double outputLimit) {
+        core.setOutputLimit(outputLimit);
+        return this;
+    }
+
+    // 設定微分低通濾波的時間常數 (秒)
+    public Vec3PIDController setDerivativeFilter(double timeConstant) {
+        core.setDerivativeFilter(timeConstant);
+        return this;
+    }
+
+    // 設定反算抗飽和增益，0 表示只做輸出限制、不修正積分
+    public Vec3PIDController setBackCalculationGain(double backCalculationGain) {
+        core.setBackCalculationGain(backCalculationGain);
+        return this;
+    }
+
+    // 設定前饋量 (複製數值)，null 表示不使用
+    public Vec3PIDController setFeedForward(Vec3 feedForward) {
+        core.setFeedForward(feedForward);
+        return this;
+    }
+
+    // 設定目標值 (複製數值)，並重置狀態
+    public void setSetpoint(Vec3 setpoint) {
+        core.setSetpoint(setpoint);
+    }
+
+    public void setSetpoint(Point setpoint) {
+        core.setSetpoint(measurement.set(setpoint));
+    }
+
+    // 重置控制器狀態
+    public void reset() {
+        core.reset();
+    }
+
+    /**
+     * 以時間來源計算時間步長並更新。
+     * @param processVariable 當前實際值。
+     * @param output 輸出的控制量。
+     * @return output。
+     */
+    public Vec3 update(Vec3 processVariable, Vec3 output) {
+        return core.update(processVariable, output);
+    }
+
+    public Vec3 update(Point processVariable, Vec3 output) {
+        return core.update(measurement.set(processVariable), output);
+    }
+
+    /**
+     * 以指定的時間步長更新，不讀取任何時鐘。
+     * @param processVariable 當前實際值 (不會被修改，可以是 output 以外的任何 Vec3)。
+     * @param deltaTime 與上次更新的時間差 (秒)；不大於 0 時不更新積分與微分狀態。
+     * @param output 輸出的控制量。
+     * @return output。
+     */
+    public Vec3 update(Vec3 processVariable, double deltaTime, Vec3 output) {
+        return core.update(processVariable, deltaTime, output);
+    }
+}
@@ -15,7 +15,15 @@ public class Vector extends Point implements PIDValue<Vector> {
     }
 
     public Vector(Vec3d p) {
-        this(p.toArray()[0], p.toArray()[1], p.toArray()[2]);
+        this(p.toArray());
+    }
+
+    public Vector(Vec3 v) {
+        this(v.x, v.y, v.z);
+    }
+
+    private Vector(double[] p) {
+        this(p[0], p[1], p[2]);
     }
 
     // --- PIDValue 介面實作開始 ---
@@ -61,7 +69,7 @@ public class Vector extends Point implements PIDValue<Vector> {
     }
 
     public Vector sub(Point p) {
-        return add(new Vector(p).inv());
+        return new Vector(getX() - p.getX(), getY() - p.getY(), getZ() - p.getZ());
     }
 
     public double dot(Point p) {
@@ -4,81 +4,151 @@ import android.util.Log;
 
 import jp.jaxa.iss.kibo.rpc.api.KiboRpcService;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Class meant to handle commands from the Ground Data System and execute them in Astrobee.
  */
 
+@SuppressWarnings("try")
 public class YourService extends KiboRpcService {
+    // 所有 API 呼叫都經過計時代理
+    ProfiledApi rpc;
     // 座標系們
     Map<String, Frame> frames;
     ObjectDetector objectDetector;
+    PoseServo poseServo;
+    PathPlanner pathPlanner;
+    MissionScheduler missionScheduler;
+    MotionTelemetry motionTelemetry;
+    KinematicsSampler kinematicsSampler;
+    SettleTrigger settleTrigger;
+    MissionClock missionClock;
+    MissionCheckpoint checkpoint;
+    AreaSurvey areaSurvey;
+    Map<Integer, String> surveyStops; // 區域 → 可同時拍到它的勘查點
+    Set<String> surveyed = new HashSet<>();
+
+    // 目標快照距離區域 0.7 m，容許錨定造成的 10 cm 偏移
+    static final double SNAPSHOT_DISTANCE = 0.7; // [m]
+    static final double SNAPSHOT_TOLERANCE = 0.1; // [m]
+    static final double NAVCAM_FORWARD_OFFSET = 0.1177; // NavCam 在機體 x 軸 (視線方向) 上的偏移 [m]
+    static final double SURVEY_DEPTH = 0.70; // 勘查點 NavCam 到區域 2、3 平面的距離 [m]
+
+    // 錨定收斂條件：以 Aruco 像素誤差判斷
+    static final AnchorPolicy AREA_ANCHOR_POLICY = new AnchorPolicy(AnchorPolicy.DISABLED, AnchorPolicy.DISABLED, 8.0, 3, 15_000L);
+
+    // 影像品質閘門：連拍 2 張取最佳，最多重拍 3 次，曝光不足時調整前方手電筒
+    QualityGate qualityGate = new QualityGate(20.0, 40.0, 220.0, 0.25)
+            .setBurst(2)
+            .setRecapture(3, 300L)
+            .setFlashlightStep(0.25f);
+
+    // 時間不足時使用的閘門：只拍一張、不重拍
+    QualityGate fastGate = new QualityGate(20.0, 40.0, 220.0, 0.25);
 
     @Override
     protected void runPlan1() {
+        setup();
+        Profiler.reset();
+        try (Profiler.Span span = Profiler.start("phase.mission")) {
+            plan1();
+        } finally {
+            finish();
+            // 各階段延遲分布，任務中途拋出例外時也寫出
+            Profiler.write(new File(getFilesDir(), "profile.tsv"));
+        }
+    }
+
+    @Override
+    protected void runPlan2(){
+        setup();
+        Profiler.reset();
+        try (Profiler.Span span = Profiler.start("phase.mission")) {
+            plan2();
+        } finally {
+            finish();
+            Profiler.write(new File(getFilesDir(), "profile_plan2.tsv"));
+        }
+    }
+
+    void plan1() {
         Frame frame;
         Image image;
-        objectDetector = new YOLOSharedObjectDetector(this);
-
-        // 座標系對應
-        frames = new HashMap<>();
-        // area1: 區域1 - 區域正中心、機器人要面向區域的方向
-        frames.put("area1", new Frame(new Vector(10.950d, -10.580d, 5.195d), new Quater(0f,0f,-0.707f,0.707f)));
-        // axis1: 軸向1 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
-        frames.put("axis1", new Frame(new Vector(0d, 1.0d, 0d), new Quater(0f,0f,0f,1.0f)));
-        // area2: 區域2 - 區域正中心、機器人要面向區域的方向
-        frames.put("area2", new Frame(new Vector(10.925d, -8.875d, 3.76203d), new Quater(0f,0.707f,0f,0.707f)));
-        // axis2: 軸向2 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
-        frames.put("axis2", new Frame(new Vector(0d, 0d, 1.0d), new Quater(0f,0f,0f,1.0f)));
-        // area3: 區域3 - 區域正中心、機器人要面向區域的方向
-        frames.put("area3", new Frame(new Vector(10.925d, -7.925d, 3.76203d), new Quater(0f,0.707f,0f,0.707f)));
-        // axis3: 軸向3 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
-        frames.put("axis3", new Frame(new Vector(0d, 0d, 1.0d), new Quater(0f,0f,0f,1.0f)));
-        // area4: 區域4 - 區域正中心、機器人要面向區域的方向
-        frames.put("area4", new Frame(new Vector(9.866984d, -6.8525d, 4.945d), new Quater(0f,0f,1.0f,0f)));
-        // axis4: 軸向4 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
-        frames.put("axis4", new Frame(new Vector(1.0d, 0d, 0d), new Quater(0f,0f,0f,1.0f)));
-        // astronaut: 太空人、機器人要面向太空人的方向
-        frames.put("astronaut", new Frame(new Vector(11.143d, -6.7607d, 4.9654d), new Quater(0f,0f,0.707f,0.707f)));
-        // way0: 主要幹線 - 起始點
-        frames.put("way0", new Frame(new Vector(9.815d,-9.806d,4.293d), new Quater(1.0f,0f,0f,0f)));
-        // way1: 主要幹線 - 幹線 1（可當錨點）
-        frames.put("way1", new Frame(new Vector(10.925d, -9.806d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
-        // way2: 主要幹線 - 幹線 2
-        frames.put("way2", new Frame(new Vector(10.925d, -8.938d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
-        // way3: 主要幹線 - 幹線 3
-        frames.put("way3", new Frame(new Vector(10.925d, -8.071d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
-        // way4: 主要幹線 - 幹線 4
-        frames.put("way4", new Frame(new Vector(10.925d, -7.200d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
 
         // The mission starts.
-        api.startMission();
+        startMission();
+
+        // 任務時鐘：5 分鐘，截止前保留 15 秒給最終回報；太空人與目標為必要階段
+        missionClock = new MissionClock(300_000L, 15_000L)
+                .plan("astronaut", 40_000L, true)
+                .plan("target", 40_000L, true)
+                .start();
 
         /* ******************************************************************************** */
         /* CCSH Function Test                                                               */
         /* ******************************************************************************** */
 
-//        // 校正
-//        PIDController<Vector> posPID = new PIDController<>(5.0, 0.01, 0.0);
-//        PIDController<Quater> oriPID = new PIDController<>(5.0, 0.01, 0.0);
-//        posPID.setSetpoint(frames.get("way1").getPosition());
-//        oriPID.setSetpoint(frames.get("way1").getOrientation());
-//        Frame errorFrame = frames.get("way1").anchor(api, 7);
+        // 校正：位姿伺服，輸出為位移指令，因此比例增益不超過 1
+        Vec3PIDController posPID = new Vec3PIDController(0.9, 0.05, 0.0, 0.05);
+        posPID.setOutputLimit(0.3);
+        PIDController<Quater> oriPID = new PIDController<>(0.9, 0.05, 0.0, 0.05);
+        poseServo = new PoseServo(posPID, oriPID)
+                .setPeriod(200L)
+                .setSettle(0.01, Math.toRadians(1.0), 0.01, 2)
+                .setTimeout(10_000L)
+                .setSampler(kinematicsSampler);
 
         // Get a camera image.
 
-        image = Image.undistort(api);
+        image = Image.undistort(rpc);
         image.save("start.png");
 
+        // 區域拜訪順序由排程器決定，最後必須抵達太空人
+        List<Integer> order = planAreas(new Frame(rpc));
+
+        for (int areaId: order) {
+            missionClock.plan("area" + areaId, 45_000L, false);
+        }
+
+        // 檢查點：還原上一次中斷前已完成的階段，略過其辨識與移動
+        checkpoint = new MissionCheckpoint(getFilesDir(), 300_000L);
+        checkpoint.restore(rpc);
+
         List<AreaInfo> areaInfos = new ArrayList<>();
-        areaInfos.add(round(1));
-        areaInfos.add(round(2));
-        areaInfos.add(round(3));
-        areaInfos.add(round(4));
+        for (int areaId: order) {
+            String phase = "area" + areaId;
+            if (checkpoint.isComplete(phase)) {
+                AreaInfo restored = checkpoint.getArea(areaId);
+                reportArea(restored);
+                areaInfos.add(restored);
+                missionClock.restored(phase);
+                continue;
+            }
+            // 來不及時略過剩下的區域，確保太空人與目標階段有時間
+            if (!missionClock.canAfford(phase, 15_000L)) {
+                Log.w("MissionClock", "skip " + phase + ": " + missionClock);
+                continue;
+            }
+            missionClock.begin(phase);
+            degrade();
+            AreaInfo areaInfo = survey(areaId);
+            if (areaInfo == null) areaInfo = round(areaId);
+            areaInfos.add(areaInfo);
+            missionClock.end(phase);
+            checkpoint.completeArea(areaInfo);
+        }
 
         /* ******************************************************************************** */
         /* Write your code to recognize the type and number of landmark items in each area! */
@@ -93,7 +163,18 @@ public class YourService extends KiboRpcService {
         /* ************************************************ */
 
         // When you move to the front of the astronaut, report the rounding completion.
-        ItemInfo targetItem = astronaut();
+        ItemInfo targetItem;
+        if (checkpoint.isComplete("astronaut")) {
+            targetItem = checkpoint.getTargetItem();
+            reportRounding(); // 還原時也要重新回報，之後的 notifyRecognitionItem 與快照才有效
+            missionClock.restored("astronaut");
+        } else {
+            missionClock.begin("astronaut");
+            degrade();
+            targetItem = astronaut();
+            missionClock.end("astronaut");
+            checkpoint.completeAstronaut(targetItem);
+        }
 
         /* ***************************************************************** */
         /* Write your code to recognize which target item the astronaut has. */
@@ -109,12 +190,125 @@ public class YourService extends KiboRpcService {
         // Take a snapshot of the target item.
         // api.takeTargetItemSnapshot();
 
+        missionClock.begin("target");
+        degrade();
         findTarget(areaInfos, targetItem);
+        missionClock.end("target");
+
+        // 任務完成，下一次執行從頭開始
+        checkpoint.clear();
     }
 
-    @Override
-    protected void runPlan2(){
-       // write your plan 2 here.
+    void plan2() {
+        // 速度優先：不做迭代錨定，每區在接近點只拍一張，校正與推論在背景一邊移動一邊進行，
+        // 最後直接前往巡航時記錄的目標位置；與 runPlan1 的設定 (路徑、排程、閘門) 相同以便比較
+
+        // The mission starts.
+        startMission();
+
+        // 任務時鐘：與 runPlan1 相同的截止時間與保留時間
+        missionClock = new MissionClock(300_000L, 15_000L)
+                .plan("astronaut", 30_000L, true)
+                .plan("target", 30_000L, true)
+                .start();
+        Image.setSaveEnabled(false);
+
+        Map<Integer, Frame> stops = new LinkedHashMap<>();
+        for (int i = 1; i <= 4; i++) {
+            stops.put(i, approachFrame(i));
+        }
+        List<Integer> order = missionScheduler.plan(new Frame(rpc), stops, frames.get("astronaut"));
+
+        checkpoint = new MissionCheckpoint(getFilesDir(), 300_000L);
+        checkpoint.restore(rpc);
+
+        DetectionPipeline pipeline = new DetectionPipeline(objectDetector).start();
+        try {
+            plan2(order, pipeline);
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    private void plan2(List<Integer> order, DetectionPipeline pipeline) {
+        List<AreaInfo> areaInfos = new ArrayList<>();
+        Map<Integer, Future<AreaInfo>> pending = new LinkedHashMap<>();
+        for (int areaId: order) {
+            String phase = "area" + areaId;
+            if (checkpoint.isComplete(phase)) {
+                AreaInfo restored = checkpoint.getArea(areaId);
+                reportArea(restored);
+                areaInfos.add(restored);
+                missionClock.restored(phase);
+                continue;
+            }
+            missionClock.begin(phase);
+            Frame frame = approachFrame(areaId);
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                pathPlanner.moveTo(rpc, frame);
+            }
+
+            Image image;
+            Frame location;
+            try (Profiler.Span span = Profiler.start("phase.capture")) {
+                image = Image.capture(rpc, fastGate);
+                location = new Frame(rpc);
+            }
+            pending.put(areaId, pipeline.submit(areaId, location, image));
+            missionClock.end(phase);
+        }
+
+        // 前往太空人的途中，背景完成剩下的推論
+        boolean astronautDone = checkpoint.isComplete("astronaut");
+        if (!astronautDone) {
+            missionClock.begin("astronaut");
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                pathPlanner.moveTo(rpc, frames.get("astronaut"));
+            }
+        } else {
+            missionClock.restored("astronaut"); // 先釋出預算，下面等待背景結果時可以使用
+        }
+
+        // 逾時的區域不丟棄：在太空人辨識使用偵測器之前，以不侵占必要階段的餘裕再等一次
+        Map<Integer, Future<AreaInfo>> late = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Future<AreaInfo>> entry: pending.entrySet()) {
+            AreaInfo areaInfo = await(entry.getKey(), entry.getValue(), Math.max(1_000L, missionClock.budget("astronaut") / 2));
+            if (areaInfo == null) {
+                late.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            reportArea(areaInfo);
+            areaInfos.add(areaInfo);
+            checkpoint.completeArea(areaInfo);
+        }
+        for (Map.Entry<Integer, Future<AreaInfo>> entry: late.entrySet()) {
+            AreaInfo areaInfo = await(entry.getKey(), entry.getValue(), Math.max(0L, missionClock.spareMillis()));
+            if (areaInfo == null) {
+                // 仍未完成：不回報也不記錄檢查點，下一次執行會重試
+                Log.w("DetectionPipeline", "area" + entry.getKey() + " still pending, give up for this run");
+                continue;
+            }
+            reportArea(areaInfo);
+            areaInfos.add(areaInfo);
+            checkpoint.completeArea(areaInfo);
+        }
+
+        ItemInfo targetItem;
+        if (astronautDone) {
+            targetItem = checkpoint.getTargetItem();
+            reportRounding(); // 還原時也要重新回報，之後的 notifyRecognitionItem 與快照才有效
+        } else {
+            reportRounding();
+            pipeline.stop(); // 未完成的區域已放棄；主執行緒推論前先等背景執行緒停止，偵測器不可同時使用
+            targetItem = recognizeTarget(fastGate);
+            missionClock.end("astronaut");
+            checkpoint.completeAstronaut(targetItem);
+        }
+
+        missionClock.begin("target");
+        findTarget(areaInfos, targetItem);
+        missionClock.end("target");
+        checkpoint.clear();
     }
 
     @Override
@@ -127,25 +321,243 @@ public class YourService extends KiboRpcService {
         return "your method";
     }
 
+    // 兩個計畫共用的設定：偵測器、座標系、路徑規劃、移動遙測與排程
+    void setup() {
+        rpc = new ProfiledApi(api);
+        objectDetector = new YOLOSharedObjectDetector(this);
+
+        // 座標系對應
+        frames = new HashMap<>();
+        // area1: 區域1 - 區域正中心、機器人要面向區域的方向
+        frames.put("area1", new Frame(new Vector(10.950d, -10.580d, 5.195d), new Quater(0f,0f,-0.707f,0.707f)));
+        // axis1: 軸向1 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
+        frames.put("axis1", new Frame(new Vector(0d, 1.0d, 0d), new Quater(0f,0f,0f,1.0f)));
+        // area2: 區域2 - 區域正中心、機器人要面向區域的方向
+        frames.put("area2", new Frame(new Vector(10.925d, -8.875d, 3.76203d), new Quater(0f,0.707f,0f,0.707f)));
+        // axis2: 軸向2 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
+        frames.put("axis2", new Frame(new Vector(0d, 0d, 1.0d), new Quater(0f,0f,0f,1.0f)));
+        // area3: 區域3 - 區域正中心、機器人要面向區域的方向
+        frames.put("area3", new Frame(new Vector(10.925d, -7.925d, 3.76203d), new Quater(0f,0.707f,0f,0.707f)));
+        // axis3: 軸向3 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
+        frames.put("axis3", new Frame(new Vector(0d, 0d, 1.0d), new Quater(0f,0f,0f,1.0f)));
+        // area4: 區域4 - 區域正中心、機器人要面向區域的方向
+        frames.put("area4", new Frame(new Vector(9.866984d, -6.8525d, 4.945d), new Quater(0f,0f,1.0f,0f)));
+        // axis4: 軸向4 - 區域的法單位向量，代表機器人要加上這方向才能相對於區域後退
+        frames.put("axis4", new Frame(new Vector(1.0d, 0d, 0d), new Quater(0f,0f,0f,1.0f)));
+        // astronaut: 太空人、機器人要面向太空人的方向
+        frames.put("astronaut", new Frame(new Vector(11.143d, -6.7607d, 4.9654d), new Quater(0f,0f,0.707f,0.707f)));
+        // way0: 主要幹線 - 起始點
+        frames.put("way0", new Frame(new Vector(9.815d,-9.806d,4.293d), new Quater(1.0f,0f,0f,0f)));
+        // way1: 主要幹線 - 幹線 1（可當錨點）
+        frames.put("way1", new Frame(new Vector(10.925d, -9.806d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
+        // way2: 主要幹線 - 幹線 2
+        frames.put("way2", new Frame(new Vector(10.925d, -8.938d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
+        // way3: 主要幹線 - 幹線 3
+        frames.put("way3", new Frame(new Vector(10.925d, -8.071d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
+        // way4: 主要幹線 - 幹線 4
+        frames.put("way4", new Frame(new Vector(10.925d, -7.200d, 4.945d), new Quater(0f,0f,0.707f,0.707f)));
+        // survey23: 勘查點 - 區域 2、3 姿態相同、相距約 0.95 m，位於兩者中間、NavCam 距區域平面 SURVEY_DEPTH，
+        // 兩張 A4 的外緣約在水平視角 42° 處，仍在畫面內 (半視角約 50°)
+        frames.put("survey23", new Frame(new Vector(10.925d, -8.400d, 3.76203d + NAVCAM_FORWARD_OFFSET + SURVEY_DEPTH), new Quater(0f,0.707f,0f,0.707f)));
+
+        surveyStops = new HashMap<>();
+        surveyStops.put(2, "survey23");
+        surveyStops.put(3, "survey23");
+        surveyed.clear();
+
+        // 路徑規劃：KIZ 1、2 的聯集為可飛行區域，本屆沒有 KOZ；與邊界保持 5 公分
+        List<PathPlanner.Box> keepIn = new ArrayList<>();
+        keepIn.add(new PathPlanner.Box(10.3d, -10.2d, 4.32d, 11.55d, -6.0d, 5.57d));
+        keepIn.add(new PathPlanner.Box(9.5d, -10.5d, 4.02d, 10.5d, -9.6d, 4.8d));
+        pathPlanner = new PathPlanner(keepIn, new ArrayList<PathPlanner.Box>(), 0.05d);
+        for (int i = 0; i <= 4; i++) {
+            pathPlanner.addNode("way" + i, frames.get("way" + i).getPosition());
+        }
+        for (int i = 1; i <= 4; i++) {
+            pathPlanner.addNode("area" + i, approachFrame(i).getPosition());
+        }
+        pathPlanner.addNode("astronaut", frames.get("astronaut").getPosition());
+        pathPlanner.addNode("survey23", frames.get("survey23").getPosition());
+        pathPlanner.build();
+
+        // 移動遙測：累積實測的移動時間並擬合成本模型，樣本不足前使用 Astrobee 標稱速度
+        // 0.2 m/s、10°/s，每段移動約 2 秒開銷
+        CostModel nominal = new CostModel.Nominal(pathPlanner, 0.2, Math.toRadians(10.0), 2.0);
+        motionTelemetry = new MotionTelemetry(pathPlanner, nominal)
+                .setStore(new File(getFilesDir(), "motion_model.properties"));
+        pathPlanner.setTelemetry(motionTelemetry);
+
+        // 任務排程
+        missionScheduler = new MissionScheduler(motionTelemetry);
+    }
+
+    // 開始任務，並啟動運動學取樣與拍攝前的靜止觸發
+    void startMission() {
+        rpc.startMission();
+
+        // 背景以 10 Hz 取樣運動學，控制器讀取最新樣本而不阻塞在 API 上
+        kinematicsSampler = new KinematicsSampler(rpc, 100L, 64).start();
+        pathPlanner.setSampler(kinematicsSampler);
+
+        // 拍攝前等待靜止：線速度 5 mm/s、角速度 0.5°/s 以下維持 200 ms，最多等 3 秒
+        settleTrigger = new SettleTrigger(0.005, Math.toRadians(0.5), 200L, 3_000L).setSampler(kinematicsSampler);
+        qualityGate.setTrigger(settleTrigger);
+        fastGate.setTrigger(settleTrigger);
+
+        // 勘查：標記至少與專程停在接近點 (後退 1 m) 時一樣大，解析度信心度才為 1，
+        // 門檻依 NavCam 焦距推算；四邊長度比 0.8 以上，信心度 0.6 以上才省略專程停留
+        double focalPixels = rpc.getNavCamIntrinsics()[0][0];
+        double minMarkerPixels = AreaSurvey.markerPixels(focalPixels, 1.0 - NAVCAM_FORWARD_OFFSET);
+        areaSurvey = new AreaSurvey(minMarkerPixels, 0.8, 0.6);
+        Log.i("AreaSurvey", "marker: minimum " + minMarkerPixels + " px, expected "
+                + AreaSurvey.markerPixels(focalPixels, SURVEY_DEPTH) + " px at survey stops");
+    }
+
+    // 等待背景辨識結果：逾時傳回 null (結果仍在計算，可再等)，失敗時以沒有物品的結果代替
+    AreaInfo await(int areaId, Future<AreaInfo> future, long timeoutMillis) {
+        try (Profiler.Span span = Profiler.start("phase.await")) {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w("DetectionPipeline", "area" + areaId + ": not ready after " + timeoutMillis + " ms");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e("DetectionPipeline", "area" + areaId + ": " + e.getMessage(), e);
+        }
+        return new AreaInfo(areaId, approachFrame(areaId), null, null, null, null);
+    }
+
+    // 任務結束或中途拋出例外時，還原全域狀態、停止背景取樣並保存移動成本模型
+    void finish() {
+        if (kinematicsSampler != null) kinematicsSampler.stop();
+        Image.setSaveEnabled(true);
+        if (motionTelemetry != null) motionTelemetry.save();
+    }
+
+    // 依任務時鐘調整降級項目：落後時關閉除錯存檔 (錨定與閘門在各階段依 level 調整)；
+    // 推論只有一次固定 320×320 的模型執行，沒有更便宜的模式可換
+    void degrade() {
+        boolean late = missionClock.level() != MissionClock.Level.NORMAL;
+        Image.setSaveEnabled(!late);
+    }
+
+    // 重新回報還原的區域物品 (寶物不回報)，不需移動
+    void reportArea(AreaInfo areaInfo) {
+        try (Profiler.Span span = Profiler.start("phase.report")) {
+            for (ItemInfo item: areaInfo.getItems()) {
+                if (!item.getName().equals("crystal") && !item.getName().equals("diamond") && !item.getName().equals("emerald")) {
+                    rpc.setAreaInfo(areaInfo.getId(), item.getName(), item.getNumber());
+                }
+            }
+        }
+    }
+
+    // 回報巡航完成
+    void reportRounding() {
+        try (Profiler.Span span = Profiler.start("phase.report")) {
+            rpc.reportRoundingCompletion();
+        }
+    }
+
+    QualityGate gate() {
+        return missionClock.level() == MissionClock.Level.NORMAL ? qualityGate : fastGate;
+    }
+
+    // 巡航時的接近座標系：沿區域法向量後退 1 公尺
+    Frame approachFrame(int areaId) {
+        return frames.get("area" + areaId).absolute(frames.get("axis" + areaId).gain(1.0));
+    }
+
+    // 排程：比較以勘查點取代區域 2、3 接近點的路線與逐區停靠的路線，勘查路線沒有比較快就不勘查
+    List<Integer> planAreas(Frame start) {
+        Frame end = frames.get("astronaut");
+        Map<Integer, Frame> direct = new LinkedHashMap<>();
+        Map<Integer, Frame> surveyed = new LinkedHashMap<>();
+        for (int i = 1; i <= 4; i++) {
+            direct.put(i, approachFrame(i));
+            surveyed.put(i, plannedStop(i));
+        }
+        List<Integer> directOrder = missionScheduler.plan(start, direct, end);
+        List<Integer> surveyOrder = missionScheduler.plan(start, surveyed, end);
+        double directCost = missionScheduler.estimateCost(start, directOrder, direct, end);
+        double surveyCost = missionScheduler.estimateCost(start, surveyOrder, surveyed, end);
+        Log.i("AreaSurvey", "estimated: survey " + surveyCost + " s, direct " + directCost + " s");
+        if (surveyCost < directCost) return surveyOrder;
+        surveyStops.clear();
+        return directOrder;
+    }
+
+    // 排程用的停靠座標系：有勘查點的區域預期在勘查點就能解析，以勘查點排程，共用勘查點的區域彼此相鄰
+    Frame plannedStop(int areaId) {
+        String stop = surveyStops.get(areaId);
+        return stop == null ? approachFrame(areaId) : frames.get(stop);
+    }
+
+    // 拍攝目標快照的座標系：沿區域法向量後退 SNAPSHOT_DISTANCE
+    Frame snapshotFrame(int areaId) {
+        return frames.get("area" + areaId).absolute(frames.get("axis" + areaId).gain(SNAPSHOT_DISTANCE));
+    }
+
+    // 位置是否在快照座標系附近 (錨定後記錄的位置只會有些微偏移)；巡航與勘查的位置都太遠
+    boolean isSnapshotValid(int areaId, Frame frame) {
+        return frame.getPosition().sub(snapshotFrame(areaId).getPosition()).norm() <= SNAPSHOT_TOLERANCE;
+    }
+
     AreaInfo round(int areaId) {
         String area = "area" + areaId;
         String axis = "axis" + areaId;
 
-        Frame frame = frames.get(area).absolute(frames.get(axis).gain(1.0));
-        frame.moveTo(api, false);
-        frame = Image.anchor(api, frames.get(axis), area, 3);
-        Frame location = frame.absolute(frames.get(axis).gain(-0.3)); // 儲存距離 0.7m 的位置，之後就不用調了
-        Image image = Image.undistort(api);
+        Frame frame = approachFrame(areaId);
+        long budget = missionClock.budget(area);
+        try (Profiler.Span span = Profiler.start("phase.move")) {
+            pathPlanner.moveTo(rpc, frame);
+            poseServo.setTimeout(Math.min(10_000L, budget / 4)).hold(rpc, frame);
+        }
+
+        // 錨定：落後時只做一次，嚴重落後時略過；失敗時以目前位姿代替
+        try (Profiler.Span span = Profiler.start("phase.anchor")) {
+            MissionClock.Level level = missionClock.level();
+            Frame anchored = null;
+            if (level != MissionClock.Level.CRITICAL) {
+                AnchorPolicy policy = AREA_ANCHOR_POLICY.limit(level == MissionClock.Level.NORMAL ? Integer.MAX_VALUE : 1, budget / 3);
+                anchored = Image.anchor(rpc, frames.get(axis), area, policy).getResult();
+            }
+            frame = anchored != null ? anchored : new Frame(rpc);
+        }
+        Frame location = frame.absolute(frames.get(axis).gain(SNAPSHOT_DISTANCE - 1.0)); // 儲存距離 0.7m 的位置，之後就不用調了
+
+        Image image;
+        try (Profiler.Span span = Profiler.start("phase.capture")) {
+            image = Image.capture(rpc, gate());
+        }
         image.save(area + ".png");
-        ArucoResult arucoResult = image.aruco(area);
-        Image paper = image.correctA4Paper(area);
-        Image region = image.crop(area);
+
+        ArucoResult arucoResult;
+        try (Profiler.Span span = Profiler.start("phase.aruco")) {
+            arucoResult = image.aruco(area);
+        }
+
+        Image paper;
+        Image region;
+        try (Profiler.Span span = Profiler.start("phase.rectify")) {
+            paper = image.correctA4Paper(arucoResult);
+            region = paper == null ? null : paper.cropRegion();
+        }
         if (region != null) region.save(area + "_crop.png");
 
+        List<ItemInfo> items = recognize(areaId, region);
+        return new AreaInfo(areaId, location, region, paper, arucoResult, items);
+    }
+
+    // 辨識區域物品並回報 (寶物不回報)
+    List<ItemInfo> recognize(int areaId, Image region) {
         List<ItemInfo> items = new ArrayList<>();
         try {
             // 步驟 1: 執行檢測並取得結果 Map
-            items = objectDetector.detect(region.getMatImage(), "lost");
+            try (Profiler.Span span = Profiler.start("phase.infer")) {
+                items = objectDetector.detect(region.getMatImage(), "lost");
+            }
 
             // 步驟 2: 顯示結果
             if (items != null && !items.isEmpty()) {
@@ -153,7 +565,9 @@ public class YourService extends KiboRpcService {
                 for (ItemInfo item: items) {
                     resultBuilder.append(item.getName()).append(": ").append(item.getNumber()).append(" 個\n");
                     if (!item.getName().equals("crystal") && !item.getName().equals("diamond") && !item.getName().equals("emerald")) {
-                        api.setAreaInfo(areaId, item.getName(), item.getNumber());
+                        try (Profiler.Span span = Profiler.start("phase.report")) {
+                            rpc.setAreaInfo(areaId, item.getName(), item.getNumber());
+                        }
                     }
                 }
                 Log.i("Object_Detection", resultBuilder.toString());
@@ -165,25 +579,85 @@ public class YourService extends KiboRpcService {
             Log.e("Object_Detection", "檢測過程發生錯誤: " + e.getMessage(), e);
         }
 
-        return new AreaInfo(areaId, location, region, paper, arucoResult, items);
+        return items;
+    }
+
+    // 勘查：此區有勘查點時，第一次經過先在勘查點拍一張，信心度足夠就直接辨識，不用專程停在區域前
+    AreaInfo survey(int areaId) {
+        String stop = surveyStops.get(areaId);
+        if (stop == null) return null;
+        if (surveyed.add(stop)) {
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                pathPlanner.moveTo(rpc, frames.get(stop));
+            }
+            Image image;
+            try (Profiler.Span span = Profiler.start("phase.capture")) {
+                image = Image.capture(rpc, gate());
+            }
+            image.save(stop + ".png");
+            areaSurvey.observe(image, new Frame(rpc));
+        }
+        if (!areaSurvey.isResolved(areaId)) {
+            Log.i("AreaSurvey", "area" + areaId + " unresolved from " + stop + ", fall back to a dedicated stop");
+            return null;
+        }
+
+        AreaSurvey.Observation observation = areaSurvey.get(areaId);
+        Image paper;
+        Image region;
+        try (Profiler.Span span = Profiler.start("phase.rectify")) {
+            paper = observation.image.correctA4Paper(observation.arucoResult);
+            region = paper == null ? null : paper.cropRegion();
+        }
+        if (region == null) return null;
+        region.save("area" + areaId + "_crop.png");
+
+        // 勘查點不在快照距離上，不記錄位置，前往目標時改用快照座標系
+        return new AreaInfo(areaId, null, region, paper, observation.arucoResult, recognize(areaId, region));
     }
 
     ItemInfo astronaut() {
         try {
             // When you move to the front of the astronaut, report the rounding completion.
-            frames.get("astronaut").moveTo(api, false);
-            Log.i("ccsh", "astronaut: " + new Frame(api));
-            api.reportRoundingCompletion();
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                pathPlanner.moveTo(rpc, frames.get("astronaut"));
+            }
+            Log.i("ccsh", "astronaut: " + new Frame(rpc));
+            reportRounding();
 
-            frames.get("astronaut").anchor(api, 10); // wait for about 10 seconds
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                long budget = missionClock.budget("astronaut");
+                poseServo.setTimeout(Math.min(10_000L, budget / 3)).hold(rpc, frames.get("astronaut")); // 靜定即提早結束
+            }
+
+            return recognizeTarget(gate());
+
+        } catch (Exception e) {
+            Log.e("Astronaut", "太空人發生錯誤: " + e.getMessage(), e);
+        }
 
-            Image image = Image.undistort(api);
+        return null;
+    }
+
+    // 在太空人前拍照並辨識目標寶物，找不到時為 null
+    ItemInfo recognizeTarget(QualityGate gate) {
+        try {
+            Image image;
+            try (Profiler.Span span = Profiler.start("phase.capture")) {
+                image = Image.capture(rpc, gate);
+            }
             image.save("astronaut.png");
-            Image region = image.crop("astronaut");
+            Image region;
+            try (Profiler.Span span = Profiler.start("phase.rectify")) {
+                region = image.crop("astronaut");
+            }
             if (region != null) region.save("astronaut_crop.png");
 
             ItemInfo targetItem = null;
-            List<ItemInfo> items = objectDetector.detect(region.getMatImage(), "target");
+            List<ItemInfo> items;
+            try (Profiler.Span span = Profiler.start("phase.infer")) {
+                items = objectDetector.detect(region.getMatImage(), "target");
+            }
             if (items != null && !items.isEmpty()) {
                 StringBuilder resultBuilder = new StringBuilder("檢測結果:\n");
                 for (ItemInfo item: items) {
@@ -221,15 +695,30 @@ public class YourService extends KiboRpcService {
         }
 
         if (targetArea != null) {
-            targetArea.getLocation().moveTo(api, true);
+            // 只考慮能拍快照的位置：錨定後記錄的位置 (若有) 與標稱的快照座標系，由成本模型選較省時者
+            List<Frame> candidates = new ArrayList<>();
+            Frame location = targetArea.getLocation();
+            if (location != null && isSnapshotValid(targetArea.getId(), location)) candidates.add(location);
+            candidates.add(snapshotFrame(targetArea.getId()));
+            try (Profiler.Span span = Profiler.start("phase.move")) {
+                pathPlanner.moveTo(rpc, missionScheduler.chooseApproach(new Frame(rpc), candidates));
+            }
 
             // Let's notify the astronaut when you recognize it.
-            api.notifyRecognitionItem();
+            try (Profiler.Span span = Profiler.start("phase.report")) {
+                rpc.notifyRecognitionItem();
+            }
 
             // Take a snapshot of the target item.
-            Image image = Image.undistort(api);
+            Image image;
+            try (Profiler.Span span = Profiler.start("phase.capture")) {
+                settleTrigger.await(rpc);
+                image = Image.undistort(rpc);
+            }
             image.save("target.png");
-            api.takeTargetItemSnapshot();
+            try (Profiler.Span span = Profiler.start("phase.report")) {
+                rpc.takeTargetItemSnapshot();
+            }
         }
     }
 }